@@ -0,0 +1,272 @@
+package com.sp.tiny.orm.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * author: 后知后觉(307817387/myz7656)
+ * email: whuzhanyuanmin@126.com
+ */
+
+class AdapterWriter {
+    private static final String INDENT = "    ";
+
+    private final String mPackageName;
+    private final String mAdapterName;
+    private final String mEntityName;
+    private final List<ColumnInfo> mColumns;
+    private final StringBuilder mBuilder;
+
+    AdapterWriter(String packageName, String adapterName, String entityName,
+                  List<ColumnInfo> columns) {
+        mPackageName = packageName;
+        mAdapterName = adapterName;
+        mEntityName = entityName;
+        mColumns = columns;
+        mBuilder = new StringBuilder();
+    }
+
+    String write() {
+        List<ColumnInfo> insertColumns = new ArrayList<>();
+        List<ColumnInfo> updateColumns = new ArrayList<>();
+        List<ColumnInfo> primaryKeys = new ArrayList<>();
+        for (ColumnInfo column : mColumns) {
+            if (!column.mAutoIncrement) {
+                insertColumns.add(column);
+            }
+            if (column.mIsId) {
+                primaryKeys.add(column);
+            } else {
+                updateColumns.add(column);
+            }
+        }
+
+        if (!mPackageName.isEmpty()) {
+            line(0, "package " + mPackageName + ";");
+            line(0, "");
+        }
+        line(0, "import android.database.Cursor;");
+        line(0, "import android.database.sqlite.SQLiteProgram;");
+        line(0, "");
+        line(0, "import com.sp.tiny.orm.core.RowAdapter;");
+        line(0, "");
+        line(0, "/**");
+        line(0, " * Generated by TinyORM, do not modify.");
+        line(0, " */");
+        line(0, "public final class " + mAdapterName + " implements RowAdapter<" + mEntityName
+                + "> {");
+
+        StringBuilder names = new StringBuilder();
+        for (ColumnInfo column : mColumns) {
+            if (names.length() > 0) {
+                names.append(", ");
+            }
+            names.append(quote(column.mName));
+        }
+        line(1, "private static final String[] COLUMNS = {" + names + "};");
+        line(0, "");
+
+        line(1, "@Override");
+        line(1, "public String[] getColumnNames() {");
+        line(2, "return COLUMNS;");
+        line(1, "}");
+        line(0, "");
+
+        line(1, "@Override");
+        line(1, "public void bindInsert(SQLiteProgram program, " + mEntityName + " object) {");
+        int index = 1;
+        for (ColumnInfo column : insertColumns) {
+            bind(column, String.valueOf(index++));
+        }
+        line(1, "}");
+        line(0, "");
+
+        line(1, "@Override");
+        line(1, "public void bindUpdate(SQLiteProgram program, " + mEntityName + " object) {");
+        index = 1;
+        for (ColumnInfo column : updateColumns) {
+            bind(column, String.valueOf(index++));
+        }
+        for (ColumnInfo column : primaryKeys) {
+            bind(column, String.valueOf(index++));
+        }
+        line(1, "}");
+        line(0, "");
+
+        line(1, "@Override");
+        line(1, "public void bindPrimaryKey(SQLiteProgram program, " + mEntityName
+                + " object, int offset) {");
+        index = 0;
+        for (ColumnInfo column : primaryKeys) {
+            bind(column, index == 0 ? "offset" : "offset + " + index);
+            index++;
+        }
+        line(1, "}");
+        line(0, "");
+
+        line(1, "@Override");
+        line(1, "public Object[] getPrimaryKey(" + mEntityName + " object) {");
+        StringBuilder keys = new StringBuilder();
+        for (ColumnInfo column : primaryKeys) {
+            if (keys.length() > 0) {
+                keys.append(", ");
+            }
+            keys.append(column.get());
+        }
+        line(2, "return new Object[] {" + keys + "};");
+        line(1, "}");
+        line(0, "");
+
+        line(1, "@Override");
+        line(1, "public " + mEntityName + " readCursor(Cursor cursor, int[] indexes) {");
+        line(2, mEntityName + " object = new " + mEntityName + "();");
+        line(2, "int index;");
+        index = 0;
+        for (ColumnInfo column : mColumns) {
+            line(2, "index = indexes[" + index++ + "];");
+            line(2, "if (index != -1 && !cursor.isNull(index)) {");
+            read(column, "index", 3);
+            line(2, "}");
+        }
+        line(2, "return object;");
+        line(1, "}");
+        line(0, "");
+
+        line(1, "@Override");
+        line(1, "public void readInto(Cursor cursor, int[] indexes, " + mEntityName
+                + " object) {");
+        line(2, "int index;");
+        index = 0;
+        for (ColumnInfo column : mColumns) {
+            line(2, "index = indexes[" + index++ + "];");
+            line(2, "if (index != -1) {");
+            line(3, "if (cursor.isNull(index)) {");
+            line(4, column.set(defaultValue(column)) + ";");
+            line(3, "} else {");
+            read(column, "index", 4);
+            line(3, "}");
+            line(2, "}");
+        }
+        line(1, "}");
+        line(0, "}");
+        return mBuilder.toString();
+    }
+
+    private void bind(ColumnInfo column, String index) {
+        if (column.mPrimitive) {
+            line(2, bindValue(column, column.get(), index));
+            return;
+        }
+        line(2, "{");
+        line(3, column.mTypeName + " value = " + column.get() + ";");
+        line(3, "if (value == null) {");
+        line(4, "program.bindNull(" + index + ");");
+        line(3, "} else {");
+        line(4, bindValue(column, "value", index));
+        line(3, "}");
+        line(2, "}");
+    }
+
+    private String bindValue(ColumnInfo column, String value, String index) {
+        switch (column.mKind) {
+            case ColumnInfo.KIND_STRING:
+                return "program.bindString(" + index + ", " + value + ".toString());";
+            case ColumnInfo.KIND_BOOLEAN:
+                return "program.bindLong(" + index + ", " + value + " ? 1 : 0);";
+            case ColumnInfo.KIND_CHAR:
+                return "program.bindString(" + index + ", String.valueOf(" + value + "));";
+            case ColumnInfo.KIND_DOUBLE:
+            case ColumnInfo.KIND_FLOAT:
+                return "program.bindDouble(" + index + ", " + value + ");";
+            case ColumnInfo.KIND_DATE:
+                return "program.bindLong(" + index + ", " + value + ".getTime());";
+            case ColumnInfo.KIND_BYTE_ARRAY:
+                return "program.bindBlob(" + index + ", " + value + ");";
+            case ColumnInfo.KIND_LONG:
+            case ColumnInfo.KIND_INT:
+            case ColumnInfo.KIND_SHORT:
+            case ColumnInfo.KIND_BYTE:
+            default:
+                return "program.bindLong(" + index + ", " + value + ");";
+        }
+    }
+
+    private void read(ColumnInfo column, String index, int indent) {
+        switch (column.mKind) {
+            case ColumnInfo.KIND_STRING:
+                line(indent, column.set("cursor.getString(" + index + ")") + ";");
+                break;
+            case ColumnInfo.KIND_BOOLEAN:
+                line(indent, column.set("cursor.getInt(" + index + ") != 0") + ";");
+                break;
+            case ColumnInfo.KIND_CHAR:
+                line(indent, "String value = cursor.getString(" + index + ");");
+                line(indent, column.set("value.length() > 0 ? value.charAt(0) : "
+                        + defaultValue(column)) + ";");
+                break;
+            case ColumnInfo.KIND_DOUBLE:
+                line(indent, column.set("cursor.getDouble(" + index + ")") + ";");
+                break;
+            case ColumnInfo.KIND_FLOAT:
+                line(indent, column.set("cursor.getFloat(" + index + ")") + ";");
+                break;
+            case ColumnInfo.KIND_LONG:
+                line(indent, column.set("cursor.getLong(" + index + ")") + ";");
+                break;
+            case ColumnInfo.KIND_INT:
+                line(indent, column.set("cursor.getInt(" + index + ")") + ";");
+                break;
+            case ColumnInfo.KIND_SHORT:
+                line(indent, column.set("cursor.getShort(" + index + ")") + ";");
+                break;
+            case ColumnInfo.KIND_BYTE:
+                line(indent, column.set("(byte) cursor.getShort(" + index + ")") + ";");
+                break;
+            case ColumnInfo.KIND_DATE:
+                line(indent, column.set("new java.util.Date(cursor.getLong(" + index + "))") + ";");
+                break;
+            case ColumnInfo.KIND_BYTE_ARRAY:
+                line(indent, column.set("cursor.getBlob(" + index + ")") + ";");
+                break;
+        }
+    }
+
+    /**
+     * readInto 中值为 NULL 时的赋值，与 Column.reset 保持一致
+     */
+    private static String defaultValue(ColumnInfo column) {
+        if (!column.mPrimitive) {
+            return "null";
+        }
+        switch (column.mKind) {
+            case ColumnInfo.KIND_BOOLEAN:
+                return "false";
+            case ColumnInfo.KIND_CHAR:
+                return "'\\0'";
+            case ColumnInfo.KIND_DOUBLE:
+                return "0d";
+            case ColumnInfo.KIND_FLOAT:
+                return "0f";
+            case ColumnInfo.KIND_LONG:
+                return "0L";
+            case ColumnInfo.KIND_SHORT:
+                return "(short) 0";
+            case ColumnInfo.KIND_BYTE:
+                return "(byte) 0";
+            case ColumnInfo.KIND_INT:
+            default:
+                return "0";
+        }
+    }
+
+    private void line(int indent, String text) {
+        for (int i = 0; i < indent && !text.isEmpty(); i++) {
+            mBuilder.append(INDENT);
+        }
+        mBuilder.append(text).append('\n');
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
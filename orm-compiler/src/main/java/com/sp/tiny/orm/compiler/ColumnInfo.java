@@ -0,0 +1,53 @@
+package com.sp.tiny.orm.compiler;
+
+/**
+ * author: 后知后觉(307817387/myz7656)
+ * email: whuzhanyuanmin@126.com
+ */
+
+class ColumnInfo {
+    static final int KIND_STRING = 1;
+    static final int KIND_BOOLEAN = 2;
+    static final int KIND_DOUBLE = 3;
+    static final int KIND_FLOAT = 4;
+    static final int KIND_LONG = 5;
+    static final int KIND_INT = 6;
+    static final int KIND_SHORT = 7;
+    static final int KIND_BYTE = 8;
+    static final int KIND_BYTE_ARRAY = 9;
+    static final int KIND_CHAR = 10;
+    static final int KIND_DATE = 11;
+
+    final String mName;
+    final String mTypeName;
+    final int mKind;
+    final boolean mPrimitive;
+
+    /**
+     * 读取表达式，如 "object.getId()" 或 "object.mId"
+     */
+    String mGetter;
+
+    /**
+     * 赋值模板，"%s" 为新值，如 "object.setId(%s)" 或 "object.mId = %s"
+     */
+    String mSetter;
+
+    boolean mIsId;
+    boolean mAutoIncrement;
+
+    ColumnInfo(String name, String typeName, int kind, boolean primitive) {
+        mName = name;
+        mTypeName = typeName;
+        mKind = kind;
+        mPrimitive = primitive;
+    }
+
+    String get() {
+        return mGetter;
+    }
+
+    String set(String value) {
+        return String.format(mSetter, value);
+    }
+}
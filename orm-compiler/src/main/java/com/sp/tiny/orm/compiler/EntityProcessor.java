@@ -0,0 +1,418 @@
+package com.sp.tiny.orm.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * author: 后知后觉(307817387/myz7656)
+ * email: whuzhanyuanmin@126.com
+ */
+
+/**
+ * 为每个 @Entity 生成 RowAdapter，无法生成时（私有字段没有访问方法、不支持的类型等）
+ * 只输出提示，运行时会回退到反射。
+ */
+public class EntityProcessor extends AbstractProcessor {
+    static final String ENTITY = "com.sp.tiny.orm.annotation.Entity";
+    static final String PROPERTY = "com.sp.tiny.orm.annotation.Property";
+    static final String ID = "com.sp.tiny.orm.annotation.Id";
+    static final String CREATOR = "com.sp.tiny.orm.annotation.Creator";
+    static final String ADAPTER_SUFFIX = "_RowAdapter";
+
+    private static final Comparator<VariableElement> FIELD_ORDER =
+            new Comparator<VariableElement>() {
+                @Override
+                public int compare(VariableElement left, VariableElement right) {
+                    return left.getSimpleName().toString()
+                            .compareTo(right.getSimpleName().toString());
+                }
+            };
+
+    private Elements mElements;
+    private Types mTypes;
+    private Messager mMessager;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        mElements = processingEnv.getElementUtils();
+        mTypes = processingEnv.getTypeUtils();
+        mMessager = processingEnv.getMessager();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(ENTITY);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement entity = mElements.getTypeElement(ENTITY);
+        if (entity == null) {
+            return false;
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(entity)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            List<ColumnInfo> columns = parseColumns(type);
+            if (columns == null) {
+                continue;
+            }
+            try {
+                writeAdapter(type, columns);
+            } catch (IOException e) {
+                mMessager.printMessage(Diagnostic.Kind.ERROR,
+                                       "TinyORM: failed to write adapter, " + e.getMessage(),
+                                       type);
+            }
+        }
+        return false;
+    }
+
+    private List<ColumnInfo> parseColumns(TypeElement type) {
+        String packageName = getPackageName(type);
+        for (ExecutableElement constructor :
+                ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (getAnnotation(constructor, CREATOR) != null) {
+                skip(type, "loads through @Creator constructor");
+                return null;
+            }
+        }
+        if (type.getModifiers().contains(Modifier.ABSTRACT)
+                || !type.getTypeParameters().isEmpty()
+                || !isTypeAccessible(type, packageName)
+                || !hasDefaultConstructor(type, packageName)) {
+            skip(type, "needs an accessible no-arg constructor");
+            return null;
+        }
+
+        List<ColumnInfo> columns = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        TypeElement current = type;
+        while (current != null
+                && !current.getQualifiedName().contentEquals(Object.class.getName())) {
+            List<VariableElement> fields = ElementFilter.fieldsIn(current.getEnclosedElements());
+            /**
+             * 与 TableManager 一致，每个类中按字段名排序
+             */
+            Collections.sort(fields, FIELD_ORDER);
+            for (VariableElement field : fields) {
+                AnnotationMirror property = getAnnotation(field, PROPERTY);
+                if (property == null) {
+                    continue;
+                }
+                if (field.getModifiers().contains(Modifier.STATIC)) {
+                    skip(type, "static property " + field.getSimpleName());
+                    return null;
+                }
+                String name = (String) getValue(property, "name");
+                if (name == null || name.isEmpty()) {
+                    name = field.getSimpleName().toString();
+                }
+                if (!names.add(name)) {
+                    skip(type, "duplicate column " + name);
+                    return null;
+                }
+                ColumnInfo column = parseColumn(type, packageName, field, name);
+                if (column == null) {
+                    return null;
+                }
+                columns.add(column);
+            }
+            TypeMirror superclass = current.getSuperclass();
+            current = superclass.getKind() == TypeKind.DECLARED
+                    ? (TypeElement) mTypes.asElement(superclass) : null;
+        }
+        if (columns.isEmpty()) {
+            skip(type, "no property");
+            return null;
+        }
+        return columns;
+    }
+
+    private ColumnInfo parseColumn(TypeElement type, String packageName, VariableElement field,
+                                   String name) {
+        TypeMirror fieldType = field.asType();
+        int kind = getKind(fieldType);
+        if (kind == 0) {
+            skip(type, "unsupported type of " + field.getSimpleName());
+            return null;
+        }
+        ColumnInfo column = new ColumnInfo(name, getTypeName(fieldType), kind,
+                                           fieldType.getKind().isPrimitive());
+
+        AnnotationMirror id = getAnnotation(field, ID);
+        if (id != null) {
+            column.mIsId = true;
+            Object autoIncrement = getValue(id, "autoincrement");
+            column.mAutoIncrement = Boolean.TRUE.equals(autoIncrement) && canAutoIncrement(kind);
+        }
+
+        String fieldName = field.getSimpleName().toString();
+        if (isMemberAccessible(field, packageName)
+                && !field.getModifiers().contains(Modifier.FINAL)) {
+            column.mGetter = "object." + fieldName;
+            column.mSetter = "object." + fieldName + " = %s";
+            return column;
+        }
+
+        String base = fieldName;
+        if (base.length() > 1 && base.charAt(0) == 'm' && Character.isUpperCase(base.charAt(1))) {
+            base = base.substring(1);
+        }
+        String capital = Character.toUpperCase(base.charAt(0)) + base.substring(1);
+        List<String> getters = new ArrayList<>();
+        List<String> setters = new ArrayList<>();
+        getters.add("get" + capital);
+        setters.add("set" + capital);
+        if (kind == ColumnInfo.KIND_BOOLEAN) {
+            getters.add("is" + capital);
+            if (base.length() > 2 && base.startsWith("is") && Character.isUpperCase(base.charAt(2))) {
+                getters.add(base);
+                setters.add("set" + base.substring(2));
+            }
+        }
+
+        String getter = null;
+        String setter = null;
+        for (ExecutableElement method : ElementFilter.methodsIn(mElements.getAllMembers(type))) {
+            if (method.getModifiers().contains(Modifier.STATIC)
+                    || !isMemberAccessible(method, packageName)) {
+                continue;
+            }
+            String methodName = method.getSimpleName().toString();
+            List<? extends VariableElement> parameters = method.getParameters();
+            if (getter == null && getters.contains(methodName) && parameters.isEmpty()
+                    && mTypes.isSameType(method.getReturnType(), fieldType)) {
+                getter = methodName;
+            } else if (setter == null && setters.contains(methodName) && parameters.size() == 1
+                    && mTypes.isSameType(parameters.get(0).asType(), fieldType)) {
+                setter = methodName;
+            }
+        }
+        if (getter == null || setter == null) {
+            skip(type, "no accessible getter/setter for " + fieldName);
+            return null;
+        }
+        column.mGetter = "object." + getter + "()";
+        column.mSetter = "object." + setter + "(%s)";
+        return column;
+    }
+
+    private int getKind(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return ColumnInfo.KIND_BOOLEAN;
+            case DOUBLE:
+                return ColumnInfo.KIND_DOUBLE;
+            case FLOAT:
+                return ColumnInfo.KIND_FLOAT;
+            case LONG:
+                return ColumnInfo.KIND_LONG;
+            case INT:
+                return ColumnInfo.KIND_INT;
+            case SHORT:
+                return ColumnInfo.KIND_SHORT;
+            case BYTE:
+                return ColumnInfo.KIND_BYTE;
+            case CHAR:
+                return ColumnInfo.KIND_CHAR;
+            case ARRAY:
+                TypeMirror component = ((ArrayType) type).getComponentType();
+                return component.getKind() == TypeKind.BYTE ? ColumnInfo.KIND_BYTE_ARRAY : 0;
+            case DECLARED:
+                String name = ((TypeElement) ((DeclaredType) type).asElement())
+                        .getQualifiedName().toString();
+                switch (name) {
+                    case "java.lang.String":
+                    case "java.lang.CharSequence":
+                        return ColumnInfo.KIND_STRING;
+                    case "java.lang.Boolean":
+                        return ColumnInfo.KIND_BOOLEAN;
+                    case "java.lang.Double":
+                        return ColumnInfo.KIND_DOUBLE;
+                    case "java.lang.Float":
+                        return ColumnInfo.KIND_FLOAT;
+                    case "java.lang.Long":
+                        return ColumnInfo.KIND_LONG;
+                    case "java.lang.Integer":
+                        return ColumnInfo.KIND_INT;
+                    case "java.lang.Short":
+                        return ColumnInfo.KIND_SHORT;
+                    case "java.lang.Byte":
+                        return ColumnInfo.KIND_BYTE;
+                    case "java.lang.Character":
+                        return ColumnInfo.KIND_CHAR;
+                    case "java.util.Date":
+                        return ColumnInfo.KIND_DATE;
+                    default:
+                        return 0;
+                }
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * 生成代码中使用的类型名，不能直接用 TypeMirror.toString()：
+     * 其中可能带有 TYPE_USE 注解或泛型参数，嵌套类型也需要使用全限定名
+     */
+    private String getTypeName(TypeMirror type) {
+        switch (type.getKind()) {
+            case ARRAY:
+                return "byte[]";
+            case DECLARED:
+                return ((TypeElement) ((DeclaredType) type).asElement())
+                        .getQualifiedName().toString();
+            default:
+                return type.getKind().name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * 与 DataType.canAutoIncrement 保持一致
+     */
+    private boolean canAutoIncrement(int kind) {
+        switch (kind) {
+            case ColumnInfo.KIND_BOOLEAN:
+            case ColumnInfo.KIND_LONG:
+            case ColumnInfo.KIND_INT:
+            case ColumnInfo.KIND_SHORT:
+            case ColumnInfo.KIND_BYTE:
+            case ColumnInfo.KIND_DATE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private boolean hasDefaultConstructor(TypeElement type, String packageName) {
+        for (ExecutableElement constructor :
+                ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty()
+                    && isMemberAccessible(constructor, packageName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isTypeAccessible(TypeElement type, String packageName) {
+        Element current = type;
+        while (current instanceof TypeElement) {
+            TypeElement element = (TypeElement) current;
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            if (element.getNestingKind() == NestingKind.MEMBER
+                    && !element.getModifiers().contains(Modifier.STATIC)) {
+                return false;
+            }
+            if (element.getNestingKind() == NestingKind.LOCAL
+                    || element.getNestingKind() == NestingKind.ANONYMOUS) {
+                return false;
+            }
+            current = element.getEnclosingElement();
+        }
+        return true;
+    }
+
+    private boolean isMemberAccessible(Element member, String packageName) {
+        Set<Modifier> modifiers = member.getModifiers();
+        if (modifiers.contains(Modifier.PUBLIC)) {
+            return true;
+        }
+        if (modifiers.contains(Modifier.PRIVATE)) {
+            return false;
+        }
+        return packageName.equals(getPackageName(member));
+    }
+
+    private String getPackageName(Element element) {
+        return mElements.getPackageOf(element).getQualifiedName().toString();
+    }
+
+    private AnnotationMirror getAnnotation(Element element, String name) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement annotation = (TypeElement) mirror.getAnnotationType().asElement();
+            if (annotation.getQualifiedName().contentEquals(name)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private Object getValue(AnnotationMirror mirror, String key) {
+        Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+                mElements.getElementValuesWithDefaults(mirror);
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : values.entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(key)) {
+                return entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    private void skip(TypeElement type, String reason) {
+        mMessager.printMessage(Diagnostic.Kind.NOTE,
+                               "TinyORM: " + type.getQualifiedName()
+                                       + " uses reflection, " + reason);
+    }
+
+    private void writeAdapter(TypeElement type, List<ColumnInfo> columns) throws IOException {
+        String packageName = getPackageName(type);
+        String binaryName = mElements.getBinaryName(type).toString();
+        String simpleName = packageName.isEmpty()
+                ? binaryName : binaryName.substring(packageName.length() + 1);
+        String adapterName = simpleName + ADAPTER_SUFFIX;
+        String qualifiedName = packageName.isEmpty()
+                ? adapterName : packageName + "." + adapterName;
+
+        String source = new AdapterWriter(packageName, adapterName,
+                                          type.getQualifiedName().toString(), columns).write();
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, type);
+        try (Writer writer = file.openWriter()) {
+            writer.write(source);
+        }
+    }
+}
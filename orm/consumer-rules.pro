@@ -0,0 +1,3 @@
+-keep class * implements com.sp.tiny.orm.core.RowAdapter {
+    <init>();
+}
@@ -0,0 +1,32 @@
+package com.sp.tiny.orm;
+
+import com.sp.tiny.orm.annotation.Entity;
+import com.sp.tiny.orm.annotation.Id;
+import com.sp.tiny.orm.annotation.Property;
+
+@Entity(name = "blob_key_table")
+public class BlobKeyRow {
+
+    @Property(name = "_id")
+    @Id
+    private byte[] mId;
+
+    @Property(name = "column_1")
+    private String mColumn1;
+
+    public byte[] getId() {
+        return mId;
+    }
+
+    public void setId(byte[] id) {
+        mId = id;
+    }
+
+    public String getColumn1() {
+        return mColumn1;
+    }
+
+    public void setColumn1(String column1) {
+        mColumn1 = column1;
+    }
+}
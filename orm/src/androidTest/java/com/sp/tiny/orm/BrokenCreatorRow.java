@@ -0,0 +1,35 @@
+package com.sp.tiny.orm;
+
+import com.sp.tiny.orm.annotation.Creator;
+import com.sp.tiny.orm.annotation.Entity;
+import com.sp.tiny.orm.annotation.Id;
+import com.sp.tiny.orm.annotation.Property;
+
+@Entity(name = "table_four_column")
+public final class BrokenCreatorRow {
+
+    @Property(name = "_id")
+    @Id
+    private final String mId;
+
+    @Property(name = "column_1")
+    private final int mColumn1;
+
+    /**
+     * column_1 的类型是 int，参数类型不一致，无法解析
+     */
+    @Creator
+    public BrokenCreatorRow(@Property(name = "_id") String id,
+                            @Property(name = "column_1") long column1) {
+        mId = id;
+        mColumn1 = (int) column1;
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public int getColumn1() {
+        return mColumn1;
+    }
+}
@@ -0,0 +1,43 @@
+package com.sp.tiny.orm;
+
+import com.sp.tiny.orm.annotation.Entity;
+import com.sp.tiny.orm.annotation.Id;
+import com.sp.tiny.orm.annotation.Property;
+
+@Entity(name = "char_table")
+public class CharRow {
+
+    @Property(name = "_id")
+    @Id
+    private String mId;
+
+    @Property(name = "letter")
+    private char mLetter;
+
+    @Property(name = "mark")
+    private Character mMark;
+
+    public String getId() {
+        return mId;
+    }
+
+    public void setId(String id) {
+        mId = id;
+    }
+
+    public char getLetter() {
+        return mLetter;
+    }
+
+    public void setLetter(char letter) {
+        mLetter = letter;
+    }
+
+    public Character getMark() {
+        return mMark;
+    }
+
+    public void setMark(Character mark) {
+        mMark = mark;
+    }
+}
@@ -0,0 +1,34 @@
+package com.sp.tiny.orm;
+
+import com.sp.tiny.orm.annotation.Entity;
+import com.sp.tiny.orm.annotation.Id;
+import com.sp.tiny.orm.annotation.NotNull;
+import com.sp.tiny.orm.annotation.Property;
+
+@Entity(name = "discard_table")
+public class DiscardRow {
+
+    @Property(name = "_id")
+    @Id
+    private String mId;
+
+    @Property(name = "column_1")
+    @NotNull
+    private String mColumn1;
+
+    public String getId() {
+        return mId;
+    }
+
+    public void setId(String id) {
+        mId = id;
+    }
+
+    public String getColumn1() {
+        return mColumn1;
+    }
+
+    public void setColumn1(String column1) {
+        mColumn1 = column1;
+    }
+}
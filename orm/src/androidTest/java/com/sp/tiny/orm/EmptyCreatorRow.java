@@ -0,0 +1,25 @@
+package com.sp.tiny.orm;
+
+import com.sp.tiny.orm.annotation.Creator;
+import com.sp.tiny.orm.annotation.Entity;
+import com.sp.tiny.orm.annotation.Id;
+import com.sp.tiny.orm.annotation.Property;
+
+@Entity(name = "table_four_column")
+public class EmptyCreatorRow {
+
+    @Property(name = "_id")
+    @Id
+    private String mId;
+
+    /**
+     * 无参构造函数不需要 @Creator，标记后初始化失败
+     */
+    @Creator
+    public EmptyCreatorRow() {
+    }
+
+    public String getId() {
+        return mId;
+    }
+}
@@ -0,0 +1,41 @@
+package com.sp.tiny.orm;
+
+import com.sp.tiny.orm.annotation.Creator;
+import com.sp.tiny.orm.annotation.Entity;
+import com.sp.tiny.orm.annotation.Id;
+import com.sp.tiny.orm.annotation.Property;
+
+@Entity(name = "table_four_column")
+public final class ImmutableRow {
+
+    @Property(name = "_id")
+    @Id
+    private final String mId;
+
+    @Property(name = "column_1")
+    private final int mColumn1;
+
+    @Property(name = "column_4")
+    private final String mColumn4;
+
+    @Creator
+    public ImmutableRow(@Property(name = "_id") String id,
+                        @Property(name = "column_1") int column1,
+                        @Property(name = "column_4") String column4) {
+        mId = id;
+        mColumn1 = column1;
+        mColumn4 = column4;
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public int getColumn1() {
+        return mColumn1;
+    }
+
+    public String getColumn4() {
+        return mColumn4;
+    }
+}
@@ -0,0 +1,46 @@
+package com.sp.tiny.orm;
+
+import com.sp.tiny.orm.annotation.Entity;
+import com.sp.tiny.orm.annotation.Id;
+import com.sp.tiny.orm.annotation.Index;
+import com.sp.tiny.orm.annotation.Property;
+
+@Entity(name = "migrate_table", indexes = {
+        @Index(name = "migrate_index", value = "column_1, column_2")
+})
+public class MigrateRow {
+
+    @Property(name = "_id")
+    @Id
+    private long mId;
+
+    @Property(name = "column_1")
+    private int mColumn1;
+
+    @Property(name = "column_2")
+    private String mColumn2;
+
+    public long getId() {
+        return mId;
+    }
+
+    public void setId(long id) {
+        mId = id;
+    }
+
+    public int getColumn1() {
+        return mColumn1;
+    }
+
+    public void setColumn1(int column1) {
+        mColumn1 = column1;
+    }
+
+    public String getColumn2() {
+        return mColumn2;
+    }
+
+    public void setColumn2(String column2) {
+        mColumn2 = column2;
+    }
+}
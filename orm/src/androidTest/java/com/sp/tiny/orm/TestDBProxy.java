@@ -29,4 +29,8 @@ public class TestDBProxy {
     public SQLiteDatabase getWritableDatabase() {
         return mTestDBHelper.getWritableDatabase();
     }
+
+    public void close() {
+        mTestDBHelper.close();
+    }
 }
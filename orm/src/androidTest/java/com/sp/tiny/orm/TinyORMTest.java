@@ -1,21 +1,65 @@
 package com.sp.tiny.orm;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.os.Debug;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 import android.util.Log;
 
+import com.sp.tiny.orm.core.BulkLoadListener;
+import com.sp.tiny.orm.core.Column;
+import com.sp.tiny.orm.core.CursorIterator;
+import com.sp.tiny.orm.core.DataType;
+import com.sp.tiny.orm.core.EntityCache;
+import com.sp.tiny.orm.core.EntityCreator;
+import com.sp.tiny.orm.core.EntityKey;
+import com.sp.tiny.orm.core.Page;
+import com.sp.tiny.orm.core.ResultValue;
+import com.sp.tiny.orm.core.RowMapper;
+import com.sp.tiny.orm.core.SQLBuilder;
+import com.sp.tiny.orm.core.Table;
+import com.sp.tiny.orm.core.TableManager;
+import com.sp.tiny.orm.core.WarmUpListener;
+
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 @RunWith(AndroidJUnit4.class)
 public class TinyORMTest {
     private static final String TAG = "TinyORMTest";
 
     public static final int TEST_COUNT = 100;
 
+    /**
+     * 基本类型列不装箱、NULL 列不创建对象时，读取一行不应产生对象，装箱时每行至少两个
+     */
+    private static final int READ_ALLOCATIONS_PER_ROW = 1;
+
+    /**
+     * SQLiteProgram 按 Object 保存绑定参数，整数列仍会装箱，每行不超过列数加上执行语句的少量对象
+     */
+    private static final int WRITE_ALLOCATIONS_PER_ROW = 6;
+
     private TestDBProxy mTestDBHelper;
 
     @Before
@@ -67,4 +111,1101 @@ public class TinyORMTest {
 
         Log.i(TAG,"----------end----------");
     }
+
+    @Test
+    public void testInsertAll() {
+        Log.i(TAG, "----------begin----------");
+
+        SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        List<TableFourColumn> rows = new ArrayList<>();
+        for (int i = 0; i < TEST_COUNT; i++) {
+            TableFourColumn row = new TableFourColumn();
+            row.setColumn1(i);
+            rows.add(row);
+        }
+
+        Log.i(TAG, "-----insertAll-----");
+        long[] rowIds = TinyORM.getInstance().insertAll(db, rows);
+        Assert.assertEquals(TEST_COUNT, rowIds.length);
+        for (long rowId : rowIds) {
+            Assert.assertTrue(rowId > 0);
+        }
+
+        Log.i(TAG, "-----updateAll-----");
+        for (TableFourColumn row : rows) {
+            row.setColumn4("updated");
+        }
+        long[] updated = TinyORM.getInstance().updateAll(db, rows);
+        for (long count : updated) {
+            Assert.assertEquals(1, count);
+        }
+        TableFourColumn row = (TableFourColumn) TinyORM.getInstance().query(db, rows.get(0));
+        Assert.assertEquals("updated", row.getColumn4());
+
+        Log.i(TAG, "-----deleteAll-----");
+        long[] deleted = TinyORM.getInstance().deleteAll(db, rows);
+        for (long count : deleted) {
+            Assert.assertEquals(1, count);
+        }
+        Assert.assertFalse(TinyORM.getInstance().exist(db, rows.get(0)));
+
+        Log.i(TAG,"----------end----------");
+    }
+
+    @Test
+    public void testUpdateAll() {
+        SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        TinyORM.getInstance().createTable(db, DiscardRow.class);
+        List<DiscardRow> rows = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            DiscardRow row = new DiscardRow();
+            row.setId("update_all_" + i);
+            row.setColumn1("before");
+            rows.add(row);
+        }
+        TinyORM.getInstance().insertAll(db, rows);
+
+        /**
+         * 中间一行违反 NOT NULL，只有该行记为 -1，其他行照常提交
+         */
+        for (int i = 0; i < rows.size(); i++) {
+            rows.get(i).setColumn1(i == 1 ? null : "after");
+        }
+        long[] results = TinyORM.getInstance().updateAll(db, rows);
+        Assert.assertArrayEquals(new long[] {1, -1, 1}, results);
+        Assert.assertEquals("after", ((DiscardRow) TinyORM.getInstance().query(
+                db, rows.get(0))).getColumn1());
+        Assert.assertEquals("before", ((DiscardRow) TinyORM.getInstance().query(
+                db, rows.get(1))).getColumn1());
+        Assert.assertEquals("after", ((DiscardRow) TinyORM.getInstance().query(
+                db, rows.get(2))).getColumn1());
+
+        TinyORM.getInstance().deleteTable(db, DiscardRow.class);
+    }
+
+    @Test
+    public void testSession() {
+        SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        TableFourColumn row = new TableFourColumn();
+        TinyORM.getInstance().insert(db, row);
+
+        Session session = TinyORM.getInstance().openSession(db);
+        TableFourColumn first = session.query(row);
+        Assert.assertNotNull(first);
+        Assert.assertNotSame(row, first);
+        Assert.assertSame(first, session.query(row));
+
+        first.setColumn4("session");
+        Assert.assertEquals(1, session.update(first));
+        Assert.assertEquals(0, session.update(first));
+        Assert.assertSame(first, session.query(row));
+
+        Assert.assertTrue(session.delete(first));
+        Assert.assertFalse(session.contains(row));
+        Assert.assertNull(session.query(row));
+    }
+
+    @Test
+    public void testEntityCache() throws Exception {
+        final SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        final TinyORM orm = TinyORM.getInstance();
+        Assert.assertTrue(orm.setCacheSize(TableFourColumn.class, TEST_COUNT));
+        EntityCache cache = orm.getEntityCache(TableFourColumn.class);
+        try {
+            final TableFourColumn row = new TableFourColumn();
+            orm.insert(db, row);
+            long misses = cache.missCount();
+            TableFourColumn first = (TableFourColumn) orm.query(db, row);
+            Assert.assertEquals(misses + 1, cache.missCount());
+            long hits = cache.hitCount();
+            TableFourColumn second = (TableFourColumn) orm.query(db, row);
+            Assert.assertEquals(hits + 1, cache.hitCount());
+            Assert.assertNotSame(first, second);
+
+            second.setColumn4("modified");
+            Assert.assertEquals("column_4", ((TableFourColumn) orm.query(db, row)).getColumn4());
+
+            row.setColumn4("update");
+            Assert.assertEquals(1, orm.update(db, row));
+            Assert.assertEquals("update", ((TableFourColumn) orm.query(db, row)).getColumn4());
+
+            db.beginTransaction();
+            try {
+                row.setColumn4("rollback");
+                orm.update(db, row);
+                TableFourColumn uncommitted = (TableFourColumn) orm.query(db, row);
+                Assert.assertEquals("rollback", uncommitted.getColumn4());
+            } finally {
+                db.endTransaction();
+            }
+            Assert.assertEquals("update", ((TableFourColumn) orm.query(db, row)).getColumn4());
+
+            /**
+             * 调用方的事务在另一个线程中结束，该线程之后不再调用 TinyORM，
+             * 写过的行从数据库读取，其他行照常缓存
+             */
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    db.beginTransaction();
+                    try {
+                        row.setColumn4("thread");
+                        orm.update(db, row);
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                }
+            });
+            writer.start();
+            writer.join();
+            Assert.assertEquals("thread", ((TableFourColumn) orm.query(db, row)).getColumn4());
+            TableFourColumn other = new TableFourColumn();
+            orm.insert(db, other);
+            orm.query(db, other);
+            hits = cache.hitCount();
+            Assert.assertNotNull(orm.query(db, other));
+            Assert.assertEquals(hits + 1, cache.hitCount());
+            Assert.assertTrue(orm.delete(db, other));
+
+            Assert.assertTrue(orm.delete(db, row));
+            Assert.assertNull(orm.query(db, row));
+        } finally {
+            orm.setCacheSize(TableFourColumn.class, 0);
+        }
+    }
+
+    @Test
+    public void testAsyncTinyORM() throws Exception {
+        AsyncTinyORM async = new AsyncTinyORM(mTestDBHelper.getWritableDatabase(), 1, false);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        try {
+            async.submitWrite(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    blocker.await();
+                    return 0;
+                }
+            }, null);
+            Future<Integer> cancelled = async.submitWrite(new OrderTask(order, -1), null);
+            for (int i = 0; i < 3; i++) {
+                async.submitWrite(new OrderTask(order, i), new AsyncTinyORM.Callback<Integer>() {
+                    @Override
+                    public void onSuccess(Integer result) {
+                        throw new IllegalStateException("callback " + result);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable throwable) {
+                    }
+                });
+            }
+            Assert.assertTrue(cancelled.cancel(false));
+
+            final CountDownLatch failed = new CountDownLatch(1);
+            async.submitWrite(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    throw new IllegalArgumentException("task");
+                }
+            }, new AsyncTinyORM.Callback<Integer>() {
+                @Override
+                public void onSuccess(Integer result) {
+                }
+
+                @Override
+                public void onFailure(Throwable throwable) {
+                    if (throwable instanceof IllegalArgumentException) {
+                        failed.countDown();
+                    }
+                }
+            });
+            blocker.countDown();
+            Assert.assertTrue(failed.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(Arrays.asList(0, 1, 2), order);
+        } finally {
+            blocker.countDown();
+            async.shutdown();
+        }
+    }
+
+    @Test
+    public void testGroupCommitter() throws Exception {
+        SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        TinyORM.getInstance().createTable(db, DiscardRow.class);
+        final GroupCommitter committer = new GroupCommitter(db, 200, TEST_COUNT);
+        final CountDownLatch start = new CountDownLatch(1);
+        final long[] results = new long[10];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final DiscardRow row = new DiscardRow();
+            row.setId("group_" + i);
+            /**
+             * 第一行违反 NOT NULL，不应影响同一批次的其他行
+             */
+            row.setColumn1(i == 0 ? null : "value");
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    results[index] = committer.insert(row);
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(-1, results[0]);
+        for (int i = 1; i < results.length; i++) {
+            Assert.assertTrue(results[i] > 0);
+        }
+        Assert.assertTrue(committer.getCommitCount() < results.length);
+
+        /**
+         * 同一批次的更新中第二行违反 NOT NULL，该行返回 0，其他行照常提交
+         */
+        final CountDownLatch update = new CountDownLatch(1);
+        final int[] counts = new int[results.length];
+        for (int i = 1; i < threads.length; i++) {
+            final DiscardRow row = new DiscardRow();
+            row.setId("group_" + i);
+            row.setColumn1(i == 2 ? null : "updated");
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        update.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    counts[index] = committer.update(row);
+                }
+            });
+            threads[i].start();
+        }
+        update.countDown();
+        for (int i = 1; i < threads.length; i++) {
+            threads[i].join();
+        }
+        for (int i = 1; i < counts.length; i++) {
+            DiscardRow probe = new DiscardRow();
+            probe.setId("group_" + i);
+            DiscardRow stored = (DiscardRow) TinyORM.getInstance().query(db, probe);
+            Assert.assertEquals(i == 2 ? 0 : 1, counts[i]);
+            Assert.assertEquals(i == 2 ? "value" : "updated", stored.getColumn1());
+        }
+
+        final DiscardRow last = new DiscardRow();
+        last.setId("group_last");
+        last.setColumn1("value");
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                committer.insert(last);
+            }
+        });
+        thread.start();
+        committer.close();
+        thread.join();
+        Assert.assertTrue(TinyORM.getInstance().exist(db, last));
+
+        TinyORM.getInstance().deleteTable(db, DiscardRow.class);
+    }
+
+    @Test
+    public void testConcurrentGetTable() throws Exception {
+        final TableManager manager = new TableManager();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Table[] tables = new Table[8];
+        Thread[] threads = new Thread[tables.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    tables[index] = manager.getTable(TableFourColumn.class);
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        /**
+         * 同时初始化同一个 Bean 时只构建一个 Table
+         */
+        Assert.assertNotNull(tables[0]);
+        for (Table table : tables) {
+            Assert.assertSame(tables[0], table);
+        }
+        Assert.assertEquals(1, manager.getTables().size());
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        TinyORM orm = TinyORM.getInstance();
+        orm.register(TableFourColumn.class, MigrateRow.class, String.class);
+        final Map<Class<?>, Boolean> ready =
+                Collections.synchronizedMap(new HashMap<Class<?>, Boolean>());
+        final AtomicInteger finished = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+        WarmUpListener listener = new WarmUpListener() {
+            @Override
+            public void onEntityReady(Class<?> clazz, long costNanos, boolean success) {
+                ready.put(clazz, success);
+            }
+
+            @Override
+            public void onFinished(long totalNanos) {
+                finished.incrementAndGet();
+                done.countDown();
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Assert.assertTrue(orm.warmUp(executor, listener));
+            Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(Boolean.TRUE, ready.get(TableFourColumn.class));
+        Assert.assertEquals(Boolean.TRUE, ready.get(MigrateRow.class));
+        Assert.assertEquals(Boolean.FALSE, ready.get(String.class));
+        Assert.assertEquals(1, finished.get());
+
+        /**
+         * executor 拒绝任务时每个 Bean 回调失败，onFinished 仍然只回调一次
+         */
+        ready.clear();
+        finished.set(0);
+        Assert.assertTrue(orm.warmUp(executor, listener));
+        Assert.assertEquals(Boolean.FALSE, ready.get(TableFourColumn.class));
+        Assert.assertEquals(Boolean.FALSE, ready.get(MigrateRow.class));
+        Assert.assertEquals(1, finished.get());
+        Assert.assertFalse(orm.warmUp(null, listener));
+    }
+
+    @Test
+    public void testRowAdapter() {
+        TableManager adapted = new TableManager();
+        Table adaptedTable = adapted.getTable(TableFourColumn.class);
+        Assert.assertNotNull(adaptedTable.getAdapter());
+        TableManager reflected = new TableManager();
+        Table reflectedTable = reflected.getTable(TableFourColumn.class);
+        reflectedTable.setAdapter(null);
+        Assert.assertEquals(new SQLBuilder(reflected).buildCreateTableSQL(TableFourColumn.class),
+                            new SQLBuilder(adapted).buildCreateTableSQL(TableFourColumn.class));
+
+        SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        TableFourColumn row = new TableFourColumn();
+        row.setColumn1(7);
+        row.setColumn4(null);
+        TinyORM.getInstance().insert(db, row);
+        Cursor cursor = db.rawQuery("SELECT * FROM table_four_column WHERE _id=?",
+                                    new String[] {row.getId()});
+        try {
+            Assert.assertTrue(cursor.moveToFirst());
+            TableFourColumn fromAdapter = new RowMapper<TableFourColumn>(adaptedTable).map(cursor);
+            TableFourColumn fromReflection =
+                    new RowMapper<TableFourColumn>(reflectedTable).map(cursor);
+            Assert.assertEquals(row.toString(), fromAdapter.toString());
+            Assert.assertEquals(fromReflection.toString(), fromAdapter.toString());
+        } finally {
+            cursor.close();
+        }
+        TinyORM.getInstance().delete(db, row);
+    }
+
+    @Test
+    public void testBlobPrimaryKey() {
+        SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        TinyORM.getInstance().createTable(db, BlobKeyRow.class);
+        BlobKeyRow row = new BlobKeyRow();
+        row.setId(new byte[] {1, 0, 'a', (byte) 0xff});
+        row.setColumn1("first");
+        Assert.assertTrue(TinyORM.getInstance().insert(db, row) > 0);
+
+        /**
+         * 主键按 BLOB 绑定，内容相同的另一个数组也能命中
+         */
+        BlobKeyRow probe = new BlobKeyRow();
+        probe.setId(new byte[] {1, 0, 'a', (byte) 0xff});
+        Assert.assertTrue(TinyORM.getInstance().exist(db, probe));
+        BlobKeyRow result = (BlobKeyRow) TinyORM.getInstance().query(db, probe);
+        Assert.assertNotNull(result);
+        Assert.assertArrayEquals(row.getId(), result.getId());
+        Assert.assertEquals("first", result.getColumn1());
+
+        probe.setColumn1("second");
+        Assert.assertEquals(1, TinyORM.getInstance().update(db, probe));
+        result = (BlobKeyRow) TinyORM.getInstance().query(db, row);
+        Assert.assertEquals("second", result.getColumn1());
+
+        BlobKeyRow other = new BlobKeyRow();
+        other.setId(new byte[] {1, 0, 'a'});
+        Assert.assertFalse(TinyORM.getInstance().exist(db, other));
+        Assert.assertFalse(TinyORM.getInstance().delete(db, other));
+        Assert.assertTrue(TinyORM.getInstance().delete(db, probe));
+        Assert.assertNull(TinyORM.getInstance().query(db, row));
+
+        TinyORM.getInstance().deleteTable(db, BlobKeyRow.class);
+    }
+
+    @Test
+    public void testQueryByIds() {
+        SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        List<TableFourColumn> rows = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            TableFourColumn row = new TableFourColumn();
+            rows.add(row);
+            ids.add(row.getId());
+        }
+        TinyORM.getInstance().insertAll(db, rows);
+        ids.add("missing");
+
+        Map<EntityKey, TableFourColumn> result =
+                TinyORM.getInstance().queryByIds(db, TableFourColumn.class, ids);
+        Assert.assertEquals(rows.size(), result.size());
+        EntityKey key = TinyORM.getInstance().keyOf(TableFourColumn.class, ids.get(0));
+        Assert.assertEquals(ids.get(0), result.get(key).getId());
+
+        BitSet exist = TinyORM.getInstance().existByIds(db, TableFourColumn.class, ids);
+        Assert.assertEquals(rows.size(), exist.cardinality());
+        Assert.assertFalse(exist.get(rows.size()));
+
+        Assert.assertEquals(rows.size(),
+                            TinyORM.getInstance().deleteByIds(db, TableFourColumn.class, ids));
+        Assert.assertTrue(TinyORM.getInstance().existAll(db, rows).isEmpty());
+    }
+
+    @Test
+    public void testQuery() {
+        SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        List<TableFourColumn> rows = new ArrayList<>();
+        for (int i = 0; i < TEST_COUNT; i++) {
+            TableFourColumn row = new TableFourColumn();
+            row.setColumn1(i);
+            row.setColumn4("query");
+            rows.add(row);
+        }
+        TinyORM.getInstance().insertAll(db, rows);
+
+        List<TableFourColumn> result = TinyORM.getInstance().newQuery(TableFourColumn.class)
+                .equalTo("column_4", "query").between("column_1", 10, 19)
+                .orderByDesc("column_1").limit(5).offset(2)
+                .list(db);
+        Assert.assertEquals(5, result.size());
+        Assert.assertEquals(17, result.get(0).getColumn1());
+
+        Query<TableFourColumn> projection = TinyORM.getInstance().newQuery(TableFourColumn.class)
+                .equalTo("column_4", "query").lessThan("column_1", 3).orderBy("column_1");
+        Assert.assertArrayEquals(new long[] {0, 1, 2}, projection.listLongs(db, "column_1"));
+        TableFourColumn partial = projection.select("_id").first(db);
+        Assert.assertEquals(rows.get(0).getId(), partial.getId());
+        Assert.assertNotEquals("query", partial.getColumn4());
+        Assert.assertEquals(3, projection.count(db));
+        Assert.assertEquals(TEST_COUNT, TinyORM.getInstance()
+                .count(db, TableFourColumn.class, "column_4=?", "query"));
+
+        TinyORM.getInstance().deleteAll(db, rows);
+    }
+
+    @Test
+    public void testQueryPage() {
+        SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        List<TableFourColumn> rows = new ArrayList<>();
+        for (int i = 0; i < TEST_COUNT; i++) {
+            TableFourColumn row = new TableFourColumn();
+            row.setColumn1(i);
+            row.setColumn4("page");
+            rows.add(row);
+        }
+        TinyORM.getInstance().insertAll(db, rows);
+        long total = TinyORM.getInstance().count(db, TableFourColumn.class, null);
+
+        long count = 0;
+        String lastId = "";
+        String token = null;
+        do {
+            Page<TableFourColumn> page = TinyORM.getInstance()
+                    .queryPage(db, TableFourColumn.class, null, token, 30);
+            Assert.assertNotNull(page);
+            for (TableFourColumn row : page.getItems()) {
+                Assert.assertTrue(row.getId().compareTo(lastId) > 0);
+                lastId = row.getId();
+            }
+            count += page.getItems().size();
+            token = page.getNextToken();
+        } while (token != null);
+        Assert.assertEquals(total, count);
+        Assert.assertNull(TinyORM.getInstance()
+                .queryPage(db, TableFourColumn.class, null, "invalid", 30));
+
+        TinyORM.getInstance().deleteAll(db, rows);
+    }
+
+    @Test
+    public void testQueryPageByIndex() {
+        SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        TinyORM orm = TinyORM.getInstance();
+        orm.deleteTable(db, MigrateRow.class);
+        orm.createTable(db, MigrateRow.class);
+        List<MigrateRow> rows = new ArrayList<>();
+        for (int i = 0; i < TEST_COUNT; i++) {
+            MigrateRow row = new MigrateRow();
+            row.setId(i + 1);
+            row.setColumn1(i % 7);
+            row.setColumn2(i % 5 == 0 ? null : "value_" + (i % 3));
+            rows.add(row);
+        }
+        orm.insertAll(db, rows);
+
+        SQLBuilder builder = orm.getSQLBuilder();
+        Column[] columns = builder.buildKeysetColumns(MigrateRow.class, "migrate_index");
+        String sql = builder.buildKeysetSQL(MigrateRow.class, columns, new Object[] {0L, "a", 0L});
+        Cursor plan = db.rawQuery("EXPLAIN QUERY PLAN " + sql,
+                                  new String[] {"0", "0", "0", "a", "0", "a", "0", "1"});
+        try {
+            Assert.assertTrue(plan.moveToFirst());
+            Assert.assertTrue(plan.getString(plan.getColumnCount() - 1).startsWith("SEARCH"));
+        } finally {
+            plan.close();
+        }
+
+        int count = 0;
+        MigrateRow previous = null;
+        String token = null;
+        do {
+            Page<MigrateRow> page = orm.queryPage(db, MigrateRow.class, "migrate_index", token, 9);
+            Assert.assertNotNull(page);
+            for (MigrateRow row : page.getItems()) {
+                if (previous != null) {
+                    int order = previous.getColumn1() - row.getColumn1();
+                    if (order == 0) {
+                        String before = previous.getColumn2();
+                        String after = row.getColumn2();
+                        if (before == null || after == null) {
+                            order = (before == null ? 0 : 1) - (after == null ? 0 : 1);
+                        } else {
+                            order = before.compareTo(after);
+                        }
+                    }
+                    Assert.assertTrue(order < 0 || (order == 0 && previous.getId() < row.getId()));
+                }
+                previous = row;
+            }
+            count += page.getItems().size();
+            token = page.getNextToken();
+        } while (token != null);
+        Assert.assertEquals(TEST_COUNT, count);
+
+        orm.deleteTable(db, MigrateRow.class);
+    }
+
+    @Test
+    public void testAllocation() {
+        SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        TinyORM orm = TinyORM.getInstance();
+        orm.deleteTable(db, MigrateRow.class);
+        orm.createTable(db, MigrateRow.class);
+        int count = TEST_COUNT * 10;
+        List<MigrateRow> rows = new ArrayList<>();
+        for (int i = 0; i <= count; i++) {
+            MigrateRow row = new MigrateRow();
+            row.setId(i + 1);
+            row.setColumn1(1000 + i);
+            rows.add(row);
+        }
+
+        /**
+         * 第一行单独插入作为预热，编译语句、初始化 Table 等一次性开销不计入
+         */
+        orm.insertAll(db, rows.subList(0, 1));
+        List<MigrateRow> batch = rows.subList(1, rows.size());
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        long[] ids = orm.insertAll(db, batch);
+        int allocations = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+        Log.i(TAG, "insert allocations " + allocations + " for " + count + " rows");
+        Assert.assertEquals(count, ids.length);
+        Assert.assertTrue(allocations < count * WRITE_ALLOCATIONS_PER_ROW);
+
+        /**
+         * 第一行同样作为预热，Cursor 创建、列位置解析与 CursorWindow 填充不计入
+         */
+        MigrateRow target = new MigrateRow();
+        CursorIterator<MigrateRow> iterator = orm.queryAllInto(db, target, null, null, "_id",
+                                                               null);
+        Assert.assertTrue(iterator.hasNext());
+        iterator.next();
+        int read = 0;
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        while (iterator.hasNext()) {
+            iterator.next();
+            read++;
+        }
+        allocations = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+        Log.i(TAG, "read allocations " + allocations + " for " + read + " rows");
+        Assert.assertEquals(count, read);
+        Assert.assertEquals(1000 + count, target.getColumn1());
+        Assert.assertTrue(allocations < read * READ_ALLOCATIONS_PER_ROW);
+
+        orm.deleteTable(db, MigrateRow.class);
+    }
+
+    @Test
+    public void testCreator() {
+        SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        TableFourColumn row = new TableFourColumn();
+        row.setColumn1(42);
+        row.setColumn4("creator");
+        TinyORM.getInstance().insert(db, row);
+
+        List<ImmutableRow> result = TinyORM.getInstance().queryList(
+                db, ImmutableRow.class, "column_4=?", new String[] {"creator"}, null, null);
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals(row.getId(), result.get(0).getId());
+        Assert.assertEquals(42, result.get(0).getColumn1());
+        Assert.assertEquals("creator", result.get(0).getColumn4());
+
+        /**
+         * 所有列都是 final 的实体在缓存中不复制，命中时返回同一个对象
+         */
+        Assert.assertTrue(TinyORM.getInstance().setCacheSize(ImmutableRow.class, TEST_COUNT));
+        try {
+            ImmutableRow probe = new ImmutableRow(row.getId(), 0, null);
+            Object cached = TinyORM.getInstance().query(db, probe);
+            Assert.assertNotNull(cached);
+            Assert.assertSame(cached, TinyORM.getInstance().query(db, probe));
+        } finally {
+            TinyORM.getInstance().setCacheSize(ImmutableRow.class, 0);
+        }
+
+        TinyORM.getInstance().delete(db, row);
+
+        /**
+         * 无法解析的 @Creator 只初始化一次，之后按非 Entity 处理，写操作返回失败值而不是抛出异常
+         */
+        TableManager manager = new TableManager();
+        Assert.assertNull(manager.getTable(BrokenCreatorRow.class));
+        Assert.assertNull(manager.getTable(BrokenCreatorRow.class));
+        BrokenCreatorRow broken = new BrokenCreatorRow(row.getId(), 1);
+        Assert.assertEquals(-1, TinyORM.getInstance().insert(db, broken));
+        Assert.assertFalse(TinyORM.getInstance().delete(db, broken));
+        Assert.assertNull(TinyORM.getInstance().query(db, broken));
+
+        try {
+            EntityCreator.create(new Table("table_four_column", EmptyCreatorRow.class));
+            Assert.fail("@Creator without parameters should be rejected");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("no parameters"));
+        }
+        Assert.assertNull(manager.getTable(EmptyCreatorRow.class));
+    }
+
+    @Test
+    public void testRowMapper() {
+        SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        TableFourColumn row = new TableFourColumn();
+        row.setColumn1(5);
+        row.setColumn4("mapper");
+        TinyORM.getInstance().insert(db, row);
+
+        /**
+         * 同一个 RowMapper 交替读取列顺序不同的两个 Cursor，每次切换都要重新解析列位置
+         */
+        RowMapper<TableFourColumn> mapper = TinyORM.getInstance()
+                .newRowMapper(TableFourColumn.class);
+        String[] args = new String[] {row.getId()};
+        Cursor all = db.rawQuery("SELECT * FROM table_four_column WHERE _id=?", args);
+        Cursor partial = db.rawQuery(
+                "SELECT column_4, _id, column_1 FROM table_four_column WHERE _id=?", args);
+        try {
+            Assert.assertTrue(all.moveToFirst());
+            Assert.assertTrue(partial.moveToFirst());
+            Assert.assertEquals(row.toString(), mapper.map(all).toString());
+
+            TableFourColumn result = mapper.map(partial);
+            Assert.assertEquals(row.getId(), result.getId());
+            Assert.assertEquals(5, result.getColumn1());
+            Assert.assertEquals("mapper", result.getColumn4());
+            Assert.assertEquals(new TableFourColumn().getColumn3(), result.getColumn3());
+
+            Assert.assertEquals(row.toString(), mapper.map(all).toString());
+        } finally {
+            all.close();
+            partial.close();
+        }
+
+        TinyORM.getInstance().delete(db, row);
+    }
+
+    @Test
+    public void testQueryInto() {
+        SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        List<TableFourColumn> rows = new ArrayList<>();
+        for (int i = 0; i < TEST_COUNT; i++) {
+            TableFourColumn row = new TableFourColumn();
+            row.setColumn1(i);
+            row.setColumn3(i % 2 == 0 ? null : "odd");
+            row.setColumn4("into");
+            rows.add(row);
+        }
+        TinyORM.getInstance().insertAll(db, rows);
+
+        TableFourColumn target = new TableFourColumn();
+        int count = 0;
+        CursorIterator<TableFourColumn> iterator = TinyORM.getInstance().queryAllInto(
+                db, target, "column_4=?", new String[] {"into"}, "column_1", null);
+        for (TableFourColumn row : iterator) {
+            Assert.assertSame(target, row);
+            Assert.assertEquals(count, row.getColumn1());
+            Assert.assertEquals(rows.get(count).getId(), row.getId());
+            Assert.assertEquals(count % 2 == 0 ? null : "odd", row.getColumn3());
+            count++;
+        }
+        Assert.assertEquals(TEST_COUNT, count);
+
+        TinyORM.getInstance().deleteAll(db, rows);
+    }
+
+    @Test
+    public void testCharColumn() {
+        SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        TinyORM.getInstance().createTable(db, CharRow.class);
+        db.execSQL("INSERT INTO char_table (_id, letter, mark) VALUES ('1', 'x', 'y')");
+        db.execSQL("INSERT INTO char_table (_id, letter, mark) VALUES ('2', '', '')");
+
+        Table adaptedTable = new TableManager().getTable(CharRow.class);
+        Assert.assertNotNull(adaptedTable.getAdapter());
+        Table reflectedTable = new TableManager().getTable(CharRow.class);
+        reflectedTable.setAdapter(null);
+
+        Cursor cursor = db.rawQuery("SELECT * FROM char_table ORDER BY _id", null);
+        try {
+            /**
+             * readValue 对空字符串仍返回 null，只有写入对象时才重置这一列
+             */
+            Assert.assertTrue(cursor.moveToLast());
+            Assert.assertNull(SQLBuilder.readValue(cursor, cursor.getColumnIndex("letter"),
+                                                   DataType.CLASS_TYPE_CHAR));
+
+            for (Table table : new Table[] {adaptedTable, reflectedTable}) {
+                RowMapper<CharRow> mapper = new RowMapper<>(table);
+                CharRow target = new CharRow();
+                Assert.assertTrue(cursor.moveToFirst());
+                Assert.assertTrue(mapper.mapInto(cursor, target));
+                Assert.assertEquals('x', target.getLetter());
+                Assert.assertEquals(Character.valueOf('y'), target.getMark());
+
+                Assert.assertTrue(cursor.moveToNext());
+                Assert.assertTrue(mapper.mapInto(cursor, target));
+                Assert.assertEquals('\0', target.getLetter());
+                Assert.assertNull(target.getMark());
+
+                CharRow row = mapper.map(cursor);
+                Assert.assertEquals('\0', row.getLetter());
+                Assert.assertNull(row.getMark());
+            }
+        } finally {
+            cursor.close();
+        }
+
+        TinyORM.getInstance().deleteTable(db, CharRow.class);
+    }
+
+    @Test
+    public void testCursorIteratorClose() {
+        SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        List<TableFourColumn> rows = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            TableFourColumn row = new TableFourColumn();
+            row.setColumn4("iterator");
+            rows.add(row);
+        }
+        TinyORM.getInstance().insertAll(db, rows);
+
+        RowMapper<TableFourColumn> mapper = TinyORM.getInstance()
+                .newRowMapper(TableFourColumn.class);
+        String[] args = new String[] {"iterator"};
+        String sql = "SELECT * FROM table_four_column WHERE column_4=?";
+
+        /**
+         * 提前结束遍历时由调用方 close，之后 hasNext 返回 false
+         */
+        Cursor cursor = db.rawQuery(sql, args);
+        CursorIterator<TableFourColumn> iterator = new CursorIterator<>(cursor, mapper);
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertEquals("iterator", iterator.next().getColumn4());
+        Assert.assertFalse(cursor.isClosed());
+        iterator.close();
+        Assert.assertTrue(cursor.isClosed());
+        Assert.assertFalse(iterator.hasNext());
+        iterator.close();
+
+        /**
+         * 遍历到最后一行之后自动关闭
+         */
+        cursor = db.rawQuery(sql, args);
+        iterator = new CursorIterator<>(cursor, mapper);
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        Assert.assertEquals(rows.size(), count);
+        Assert.assertTrue(cursor.isClosed());
+
+        TinyORM.getInstance().deleteAll(db, rows);
+    }
+
+    @Test
+    public void testSchemaFingerprint() {
+        SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        TinyORM.getInstance().deleteTable(db, MigrateRow.class);
+        String indexSQL = "SELECT COUNT(*) FROM sqlite_master WHERE name='migrate_index'";
+        String fingerprintSQL = "SELECT fingerprint FROM " + SQLBuilder.SCHEMA_TABLE
+                + " WHERE name='migrate_table'";
+
+        Assert.assertTrue(TinyORM.getInstance().createTables(db, MigrateRow.class));
+        Assert.assertEquals(1, DatabaseUtils.longForQuery(db, indexSQL, null));
+        String fingerprint = DatabaseUtils.stringForQuery(db, fingerprintSQL, null);
+        Assert.assertEquals(TinyORM.getInstance().getSQLBuilder()
+                                    .buildSchemaFingerprint(MigrateRow.class), fingerprint);
+
+        /**
+         * 指纹一致时不执行 DDL，绕过 TinyORM 删除的索引不会被重建
+         */
+        db.execSQL("DROP INDEX migrate_index");
+        Assert.assertTrue(TinyORM.getInstance().createTables(db, MigrateRow.class));
+        Assert.assertEquals(0, DatabaseUtils.longForQuery(db, indexSQL, null));
+
+        /**
+         * deleteTable 同时删除指纹，下一次 createTables 重新建表
+         */
+        TinyORM.getInstance().deleteTable(db, MigrateRow.class);
+        Assert.assertEquals(0, DatabaseUtils.longForQuery(
+                db, "SELECT COUNT(*) FROM " + SQLBuilder.SCHEMA_TABLE
+                        + " WHERE name='migrate_table'", null));
+        Assert.assertTrue(TinyORM.getInstance().createTables(db, MigrateRow.class));
+        Assert.assertEquals(1, DatabaseUtils.longForQuery(db, indexSQL, null));
+
+        TinyORM.getInstance().deleteTable(db, MigrateRow.class);
+    }
+
+    @Test
+    public void testSchemaMigration() {
+        SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        db.execSQL("CREATE TABLE IF NOT EXISTS migrate_table(_id INTEGER PRIMARY KEY)");
+        TinyORM.getInstance().deleteTable(db, MigrateRow.class);
+        db.execSQL("CREATE TABLE migrate_table(_id INTEGER PRIMARY KEY NOT NULL, "
+                + "column_1 INTEGER)");
+        db.execSQL("CREATE INDEX migrate_index ON migrate_table(column_1)");
+        db.execSQL("INSERT INTO migrate_table(_id, column_1) VALUES (1, 11)");
+
+        Assert.assertTrue(TinyORM.getInstance().createTables(db, MigrateRow.class));
+
+        MigrateRow row = new MigrateRow();
+        row.setId(1);
+        row = (MigrateRow) TinyORM.getInstance().query(db, row);
+        Assert.assertNotNull(row);
+        Assert.assertEquals(11, row.getColumn1());
+        Assert.assertNull(row.getColumn2());
+        Cursor cursor = db.rawQuery("PRAGMA index_info(migrate_index)", null);
+        try {
+            Assert.assertEquals(2, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+
+        /**
+         * 列类型变化需要重建，Bean 中没有的列与其索引保留
+         */
+        TinyORM.getInstance().deleteTable(db, MigrateRow.class);
+        db.execSQL("CREATE TABLE migrate_table(_id INTEGER PRIMARY KEY NOT NULL, "
+                + "column_1 TEXT, legacy TEXT NOT NULL)");
+        db.execSQL("CREATE INDEX legacy_index ON migrate_table(legacy)");
+        db.execSQL("INSERT INTO migrate_table(_id, column_1, legacy) VALUES (1, '11', 'kept')");
+
+        Assert.assertTrue(TinyORM.getInstance().createTables(db, MigrateRow.class));
+
+        row = new MigrateRow();
+        row.setId(1);
+        row = (MigrateRow) TinyORM.getInstance().query(db, row);
+        Assert.assertNotNull(row);
+        Assert.assertEquals(11, row.getColumn1());
+        Assert.assertEquals("kept", DatabaseUtils.stringForQuery(
+                db, "SELECT legacy FROM migrate_table WHERE _id=1", null));
+        Assert.assertEquals(1, DatabaseUtils.longForQuery(
+                db, "SELECT COUNT(*) FROM sqlite_master WHERE name='legacy_index'", null));
+
+        TinyORM.getInstance().deleteTable(db, MigrateRow.class);
+    }
+
+    @Test
+    public void testBulkLoad() {
+        SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        TinyORM.getInstance().deleteTable(db, MigrateRow.class);
+        List<MigrateRow> rows = new ArrayList<>();
+        for (int i = 0; i < TEST_COUNT; i++) {
+            MigrateRow row = new MigrateRow();
+            row.setId(i + 1);
+            row.setColumn1(i);
+            rows.add(row);
+        }
+
+        final long[] costs = {-1, -1, -1};
+        long[] ids = TinyORM.getInstance().bulkLoad(db, MigrateRow.class, rows,
+                                                    new BulkLoadListener() {
+            @Override
+            public void onPhaseFinished(Class<?> clazz, int phase, long costNanos,
+                                        boolean success) {
+                Assert.assertTrue(success);
+                costs[phase] = costNanos;
+                Log.i(TAG, "bulk load phase " + phase + " cost " + costNanos);
+            }
+        });
+        Assert.assertEquals(TEST_COUNT, ids.length);
+        for (long cost : costs) {
+            Assert.assertTrue(cost >= 0);
+        }
+        Assert.assertEquals(TEST_COUNT, TinyORM.getInstance().count(db, MigrateRow.class, null));
+        Cursor cursor = db.rawQuery("PRAGMA index_info(migrate_index)", null);
+        try {
+            Assert.assertEquals(2, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+
+        TinyORM.getInstance().deleteTable(db, MigrateRow.class);
+    }
+
+    @Test
+    public void testInsertOrUpdate() {
+        SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        TinyORM orm = TinyORM.getInstance();
+        orm.createTable(db, UniqueRow.class);
+        UniqueRow first = new UniqueRow("first", "x", "1");
+        Assert.assertTrue(orm.insertOrUpdate(db, first));
+
+        /**
+         * 非主键的 UNIQUE 冲突与 insert 一样替换冲突的行
+         */
+        UniqueRow second = new UniqueRow("second", "x", "1");
+        Assert.assertTrue(orm.insertOrUpdate(db, second));
+        Assert.assertFalse(orm.exist(db, first));
+        Assert.assertTrue(orm.exist(db, second));
+
+        /**
+         * 只更新部分列时，相同的列集合复用同一条 SQL
+         */
+        String[] columns = new String[] {"column_1"};
+        List<Column> updateColumns = orm.getSQLBuilder().buildUpdateColumns(second, columns);
+        Assert.assertSame(orm.getSQLBuilder().buildUpsertSQL(UniqueRow.class, updateColumns),
+                          orm.getSQLBuilder().buildUpsertSQL(UniqueRow.class, updateColumns));
+        second.setCode("ignored");
+        second.setColumn1("2");
+        ResultValue<Object> result = new ResultValue<>();
+        Assert.assertTrue(orm.insertOrUpdate(db, second, columns, result));
+        UniqueRow updated = (UniqueRow) result.getValue();
+        Assert.assertEquals("x", updated.getCode());
+        Assert.assertEquals("2", updated.getColumn1());
+
+        UniqueRow third = new UniqueRow("third", "y", "3");
+        UniqueRow fourth = new UniqueRow("fourth", "y", "4");
+        second.setCode("x");
+        second.setColumn1("5");
+        long[] results = orm.insertOrUpdateAll(db, Arrays.asList(third, second, fourth));
+        Assert.assertArrayEquals(new long[] {1, 1, 1}, results);
+        Assert.assertFalse(orm.exist(db, third));
+        Assert.assertEquals("4", ((UniqueRow) orm.query(db, fourth)).getColumn1());
+        Assert.assertEquals("5", ((UniqueRow) orm.query(db, second)).getColumn1());
+
+        orm.deleteTable(db, UniqueRow.class);
+    }
+
+    @Test
+    public void testInsertOrDiscard() {
+        SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        TinyORM.getInstance().createTable(db, DiscardRow.class);
+        DiscardRow row = new DiscardRow();
+        row.setId("discard");
+        row.setColumn1("first");
+        Assert.assertTrue(TinyORM.getInstance().insertOrDiscard(db, row));
+
+        row.setColumn1("second");
+        Assert.assertTrue(TinyORM.getInstance().insertOrDiscard(db, row));
+        DiscardRow result = (DiscardRow) TinyORM.getInstance().query(db, row);
+        Assert.assertEquals("first", result.getColumn1());
+
+        String[] version = DatabaseUtils.stringForQuery(db, "SELECT sqlite_version()", null)
+                .split("\\.");
+        if (Integer.parseInt(version[0]) * 1000 + Integer.parseInt(version[1]) >= 3024) {
+            DiscardRow invalid = new DiscardRow();
+            invalid.setId("invalid");
+            Assert.assertFalse(TinyORM.getInstance().insertOrDiscard(db, invalid));
+        }
+
+        TinyORM.getInstance().deleteTable(db, DiscardRow.class);
+    }
+
+    @Test
+    public void testReopenDatabase() {
+        SQLiteDatabase db = mTestDBHelper.getWritableDatabase();
+        TableFourColumn row = new TableFourColumn();
+        Assert.assertTrue(TinyORM.getInstance().insert(db, row) > 0);
+
+        /**
+         * 关闭后旧连接上的写操作返回失败，不抛出异常；重新打开后重新编译语句
+         */
+        mTestDBHelper.close();
+        Assert.assertEquals(-1, TinyORM.getInstance().insert(db, new TableFourColumn()));
+        Assert.assertFalse(TinyORM.getInstance().delete(db, row));
+
+        SQLiteDatabase reopened = mTestDBHelper.getWritableDatabase();
+        Assert.assertNotSame(db, reopened);
+        TableFourColumn another = new TableFourColumn();
+        Assert.assertTrue(TinyORM.getInstance().insert(reopened, another) > 0);
+        another.setColumn4("reopened");
+        Assert.assertEquals(1, TinyORM.getInstance().update(reopened, another));
+        Assert.assertTrue(TinyORM.getInstance().delete(reopened, row));
+        Assert.assertTrue(TinyORM.getInstance().delete(reopened, another));
+    }
+
+    private static class OrderTask implements Callable<Integer> {
+        private final List<Integer> mOrder;
+        private final int mIndex;
+
+        OrderTask(List<Integer> order, int index) {
+            mOrder = order;
+            mIndex = index;
+        }
+
+        @Override
+        public Integer call() {
+            mOrder.add(mIndex);
+            return mIndex;
+        }
+    }
 }
@@ -0,0 +1,54 @@
+package com.sp.tiny.orm;
+
+import com.sp.tiny.orm.annotation.Entity;
+import com.sp.tiny.orm.annotation.Id;
+import com.sp.tiny.orm.annotation.Property;
+import com.sp.tiny.orm.annotation.Unique;
+
+@Entity(name = "unique_table")
+public class UniqueRow {
+
+    @Property(name = "_id")
+    @Id
+    private String mId;
+
+    @Property(name = "code")
+    @Unique
+    private String mCode;
+
+    @Property(name = "column_1")
+    private String mColumn1;
+
+    public UniqueRow() {
+    }
+
+    public UniqueRow(String id, String code, String column1) {
+        mId = id;
+        mCode = code;
+        mColumn1 = column1;
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public void setId(String id) {
+        mId = id;
+    }
+
+    public String getCode() {
+        return mCode;
+    }
+
+    public void setCode(String code) {
+        mCode = code;
+    }
+
+    public String getColumn1() {
+        return mColumn1;
+    }
+
+    public void setColumn1(String column1) {
+        mColumn1 = column1;
+    }
+}
@@ -0,0 +1,249 @@
+package com.sp.tiny.orm;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * author: 后知后觉(307817387/myz7656)
+ * email: whuzhanyuanmin@126.com
+ */
+
+/**
+ * TinyORM 的异步封装，绑定一个数据库
+ * 所有写操作在同一个写线程中串行执行，避免多个线程争用写锁；读操作在固定大小的读线程池中执行，
+ * 开启 WAL 后读操作可以与写操作并发。
+ * 返回的 Future 可以取消，尚未开始执行的任务会从队列中移除；回调在执行任务的线程中调用。
+ */
+public class AsyncTinyORM {
+    private static final String TAG = "AsyncTinyORM";
+
+    private final TinyORM mTinyORM;
+    private final SQLiteDatabase mDatabase;
+    private final ThreadPoolExecutor mWriter;
+    private final ThreadPoolExecutor mReaders;
+
+    /**
+     * @param db DBDatabase 引擎
+     * @param readerCount 读线程个数，至少为 1
+     * @param enableWAL 是否开启 WAL，需要在没有事务时调用
+     */
+    public AsyncTinyORM(@NonNull SQLiteDatabase db, int readerCount, boolean enableWAL) {
+        mTinyORM = TinyORM.getInstance();
+        mDatabase = db;
+        if (enableWAL && !db.isWriteAheadLoggingEnabled()) {
+            db.enableWriteAheadLogging();
+        }
+        int readers = Math.max(1, readerCount);
+        mWriter = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                                         new LinkedBlockingQueue<Runnable>(),
+                                         new NamedThreadFactory("TinyORM-writer"));
+        mReaders = new ThreadPoolExecutor(readers, readers, 0, TimeUnit.MILLISECONDS,
+                                          new LinkedBlockingQueue<Runnable>(),
+                                          new NamedThreadFactory("TinyORM-reader"));
+    }
+
+    public SQLiteDatabase getDatabase() {
+        return mDatabase;
+    }
+
+    public Future<Long> insert(final Object object, Callback<Long> callback) {
+        return submitWrite(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return mTinyORM.insert(mDatabase, object);
+            }
+        }, callback);
+    }
+
+    public Future<Integer> update(final Object object, Callback<Integer> callback) {
+        return submitWrite(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return mTinyORM.update(mDatabase, object);
+            }
+        }, callback);
+    }
+
+    public Future<Boolean> delete(final Object object, Callback<Boolean> callback) {
+        return submitWrite(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return mTinyORM.delete(mDatabase, object);
+            }
+        }, callback);
+    }
+
+    public Future<Boolean> insertOrUpdate(final Object object, Callback<Boolean> callback) {
+        return submitWrite(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return mTinyORM.insertOrUpdate(mDatabase, object);
+            }
+        }, callback);
+    }
+
+    public Future<long[]> insertAll(final Iterable<?> objects, Callback<long[]> callback) {
+        return submitWrite(new Callable<long[]>() {
+            @Override
+            public long[] call() {
+                return mTinyORM.insertAll(mDatabase, objects);
+            }
+        }, callback);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Future<T> query(final T object, Callback<T> callback) {
+        return submitRead(new Callable<T>() {
+            @Override
+            public T call() {
+                return (T) mTinyORM.query(mDatabase, object);
+            }
+        }, callback);
+    }
+
+    /**
+     * 按条件查询多行，参数同 {@link TinyORM#queryAll}，结果一次性加载为 List
+     */
+    public <T> Future<List<T>> queryList(final Class<T> clazz, final String selection,
+                                         final String[] selectionArgs, final String orderBy,
+                                         final String limit, Callback<List<T>> callback) {
+        return submitRead(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return mTinyORM.queryList(mDatabase, clazz, selection, selectionArgs, orderBy,
+                                          limit);
+            }
+        }, callback);
+    }
+
+    /**
+     * 在写线程中执行任意写操作，例如包含多个操作的事务
+     */
+    public <T> Future<T> submitWrite(@NonNull Callable<T> task, Callback<T> callback) {
+        return submit(mWriter, task, callback);
+    }
+
+    /**
+     * 在读线程池中执行任意读操作
+     */
+    public <T> Future<T> submitRead(@NonNull Callable<T> task, Callback<T> callback) {
+        return submit(mReaders, task, callback);
+    }
+
+    /**
+     * 等待执行的写任务个数
+     */
+    public int getWriteQueueDepth() {
+        return mWriter.getQueue().size();
+    }
+
+    /**
+     * 等待执行的读任务个数
+     */
+    public int getReadQueueDepth() {
+        return mReaders.getQueue().size();
+    }
+
+    /**
+     * 正在执行的读写任务个数
+     */
+    public int getActiveCount() {
+        return mWriter.getActiveCount() + mReaders.getActiveCount();
+    }
+
+    /**
+     * 不再接受新任务，已提交的任务继续执行
+     */
+    public void shutdown() {
+        mWriter.shutdown();
+        mReaders.shutdown();
+    }
+
+    public boolean isShutdown() {
+        return mWriter.isShutdown();
+    }
+
+    private <T> Future<T> submit(ThreadPoolExecutor executor, Callable<T> task,
+                                 Callback<T> callback) {
+        Task<T> future = new Task<>(executor, task, callback);
+        executor.execute(future);
+        return future;
+    }
+
+    /**
+     * 结果回调，在执行任务的线程中调用，任务被取消时不会调用
+     * 回调抛出的 RuntimeException 只记录日志，不影响执行线程与后续任务
+     */
+    public interface Callback<T> {
+        void onSuccess(T result);
+
+        void onFailure(Throwable throwable);
+    }
+
+    private static class Task<T> extends FutureTask<T> {
+        private final ThreadPoolExecutor mExecutor;
+        private final Callback<T> mCallback;
+
+        Task(ThreadPoolExecutor executor, Callable<T> callable, Callback<T> callback) {
+            super(callable);
+            mExecutor = executor;
+            mCallback = callback;
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                mExecutor.remove(this);
+                return;
+            }
+            if (mCallback == null) {
+                return;
+            }
+            T result = null;
+            Throwable failure = null;
+            try {
+                result = get();
+            } catch (ExecutionException e) {
+                failure = e.getCause();
+            } catch (InterruptedException | CancellationException e) {
+                return;
+            }
+            try {
+                if (failure != null) {
+                    mCallback.onFailure(failure);
+                } else {
+                    mCallback.onSuccess(result);
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "callback failed", e);
+            }
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String mName;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        NamedThreadFactory(String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            return new Thread(runnable, mName + "-" + mCount.incrementAndGet());
+        }
+    }
+}
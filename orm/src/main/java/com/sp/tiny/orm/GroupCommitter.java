@@ -0,0 +1,250 @@
+package com.sp.tiny.orm;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * author: 后知后觉(307817387/myz7656)
+ * email: whuzhanyuanmin@126.com
+ */
+
+/**
+ * 组提交：多个线程的写操作进入队列，由提交线程每隔 maxDelayMillis 或者每 maxBatchSize 个操作
+ * 合并到一个事务中执行，调用方在所在批次提交后返回，多个写操作只需要一次 fsync。
+ * 调用方线程已经在事务中时直接执行，避免与提交线程互相等待。
+ * 单个操作抛出异常时只有该操作返回失败（insert 为 -1，update 为 0，其他为 false），同一批次的其他操作照常提交。
+ */
+public class GroupCommitter {
+    private static final String TAG = "GroupCommitter";
+
+    private final TinyORM mTinyORM;
+    private final SQLiteDatabase mDatabase;
+    private final long mMaxDelayMillis;
+    private final int mMaxBatchSize;
+    private final LinkedBlockingQueue<Operation> mQueue;
+    private final Thread mThread;
+    private final AtomicLong mCommitCount;
+    private final AtomicLong mOperationCount;
+    private volatile boolean mClosed;
+
+    /**
+     * @param db DBDatabase 引擎
+     * @param maxDelayMillis 批次中第一个操作最多等待的时间
+     * @param maxBatchSize 每个批次最多包含的操作个数
+     */
+    public GroupCommitter(@NonNull SQLiteDatabase db, long maxDelayMillis, int maxBatchSize) {
+        mTinyORM = TinyORM.getInstance();
+        mDatabase = db;
+        mMaxDelayMillis = Math.max(0, maxDelayMillis);
+        mMaxBatchSize = Math.max(1, maxBatchSize);
+        mQueue = new LinkedBlockingQueue<>();
+        mCommitCount = new AtomicLong();
+        mOperationCount = new AtomicLong();
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "TinyORM-committer");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * 同 {@link TinyORM#insert(SQLiteDatabase, Object)}，在所在批次提交后返回
+     */
+    public long insert(final Object object) {
+        return submit(new Operation(-1) {
+            @Override
+            long execute() {
+                return mTinyORM.insert(mDatabase, object);
+            }
+        });
+    }
+
+    /**
+     * 同 {@link TinyORM#update(SQLiteDatabase, Object)}，在所在批次提交后返回
+     */
+    public int update(final Object object) {
+        return (int) submit(new Operation(0) {
+            @Override
+            long execute() {
+                return mTinyORM.update(mDatabase, object);
+            }
+        });
+    }
+
+    /**
+     * 同 {@link TinyORM#delete(SQLiteDatabase, Object)}，在所在批次提交后返回
+     */
+    public boolean delete(final Object object) {
+        return submit(new Operation(0) {
+            @Override
+            long execute() {
+                return mTinyORM.delete(mDatabase, object) ? 1 : 0;
+            }
+        }) > 0;
+    }
+
+    /**
+     * 同 {@link TinyORM#insertOrUpdate(SQLiteDatabase, Object)}，在所在批次提交后返回
+     */
+    public boolean insertOrUpdate(final Object object) {
+        return submit(new Operation(0) {
+            @Override
+            long execute() {
+                return mTinyORM.insertOrUpdate(mDatabase, object) ? 1 : 0;
+            }
+        }) > 0;
+    }
+
+    /**
+     * 已提交的事务个数
+     */
+    public long getCommitCount() {
+        return mCommitCount.get();
+    }
+
+    /**
+     * 已执行的写操作个数
+     */
+    public long getOperationCount() {
+        return mOperationCount.get();
+    }
+
+    /**
+     * 提交队列中剩余的操作后停止提交线程，之后的写操作在调用方线程中直接执行
+     */
+    public void close() {
+        mClosed = true;
+        mThread.interrupt();
+        boolean interrupted = false;
+        while (mThread.isAlive()) {
+            try {
+                mThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private long submit(Operation operation) {
+        if (mClosed || mDatabase.inTransaction() || Thread.currentThread() == mThread) {
+            return operation.execute();
+        }
+        mQueue.add(operation);
+        if (mClosed && mQueue.remove(operation)) {
+            return operation.execute();
+        }
+        return operation.await();
+    }
+
+    private void loop() {
+        List<Operation> batch = new ArrayList<>(mMaxBatchSize);
+        while (!mClosed || !mQueue.isEmpty()) {
+            try {
+                Operation first = mClosed ? mQueue.poll() : mQueue.take();
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime()
+                        + TimeUnit.MILLISECONDS.toNanos(mMaxDelayMillis);
+                while (batch.size() < mMaxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Operation next = mClosed || remaining <= 0
+                            ? mQueue.poll() : mQueue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                /**
+                 * close 时中断等待，把已取出的操作提交后继续清空队列
+                 */
+            }
+            if (!batch.isEmpty()) {
+                commit(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<Operation> batch) {
+        boolean committed = false;
+        try {
+            mDatabase.beginTransaction();
+            try {
+                for (Operation operation : batch) {
+                    try {
+                        operation.mResult = operation.execute();
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "operation failed", e);
+                        operation.mResult = operation.mFailure;
+                    }
+                }
+                mDatabase.setTransactionSuccessful();
+            } finally {
+                mDatabase.endTransaction();
+                mTinyORM.flushWrites(mDatabase);
+            }
+            committed = true;
+        } catch (RuntimeException e) {
+            Log.e(TAG, "commit failed", e);
+        } finally {
+            for (Operation operation : batch) {
+                if (!committed) {
+                    operation.mResult = operation.mFailure;
+                }
+                operation.mLatch.countDown();
+            }
+        }
+        if (committed) {
+            mCommitCount.incrementAndGet();
+            mOperationCount.addAndGet(batch.size());
+        }
+    }
+
+    private abstract static class Operation {
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+        private final long mFailure;
+        private volatile long mResult;
+
+        /**
+         * @param failure 执行出错或者事务提交失败时返回的值，与 TinyORM 对应方法的失败值一致
+         */
+        Operation(long failure) {
+            mFailure = failure;
+        }
+
+        abstract long execute();
+
+        long await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    mLatch.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return mResult;
+        }
+    }
+}
@@ -0,0 +1,567 @@
+package com.sp.tiny.orm;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+
+import com.sp.tiny.orm.core.BindArgsCursorFactory;
+import com.sp.tiny.orm.core.Column;
+import com.sp.tiny.orm.core.CursorIterator;
+import com.sp.tiny.orm.core.RowMapper;
+import com.sp.tiny.orm.core.SQLBuilder;
+import com.sp.tiny.orm.core.Table;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * author: 后知后觉(307817387/myz7656)
+ * email: whuzhanyuanmin@126.com
+ */
+
+/**
+ * 按列名构造的查询，通过 {@link TinyORM#newQuery(Class)} 创建
+ * 条件之间为 AND 关系，所有值都以 ? 参数绑定。构造时校验列名，列不存在时抛出 IllegalArgumentException。
+ * 相同结构（条件、排序、分页的组合）的查询只生成一次 SQL，缓存在 Table 上，
+ * 相同的 SQL 也能命中数据库连接上的预编译语句缓存。
+ * 通过 {@link #select(String...)} 只查询部分列，加载为部分填充的对象，或者通过 listLongs、
+ * listStrings、listTuples 直接读取列值，避免把不需要的 TEXT / BLOB 读入 CursorWindow。
+ * 不是线程安全的。
+ *
+ * <pre>
+ * List&lt;User&gt; users = TinyORM.getInstance().newQuery(User.class)
+ *         .greaterThan("age", 18).like("name", "z%").orderByDesc("age").limit(20)
+ *         .list(db);
+ * </pre>
+ */
+public class Query<T> {
+    private static final char OP_EQUAL = '=';
+    private static final char OP_NOT_EQUAL = '!';
+    private static final char OP_GREATER = '>';
+    private static final char OP_GREATER_EQUAL = 'g';
+    private static final char OP_LESS = '<';
+    private static final char OP_LESS_EQUAL = 'l';
+    private static final char OP_LIKE = '~';
+    private static final char OP_BETWEEN = 'b';
+    private static final char OP_IN = 'i';
+    private static final char OP_IS_NULL = 'n';
+    private static final char OP_IS_NOT_NULL = 'N';
+    private static final char ORDER_ASC = 'a';
+    private static final char ORDER_DESC = 'd';
+
+    private final Table mTable;
+    private final Column[] mColumns;
+    private final StringBuilder mShape;
+    private final List<Object> mArgs;
+    private int[] mSelection;
+    private long mLimit = -1;
+    private long mOffset = -1;
+
+    Query(@NonNull Table table) {
+        mTable = table;
+        mColumns = table.getColumnArray();
+        mShape = new StringBuilder();
+        mArgs = new ArrayList<>();
+    }
+
+    public Table getTable() {
+        return mTable;
+    }
+
+    /**
+     * 只查询指定的列，未选择的属性保持对象的默认值
+     *
+     * @param columns 列名，为空时查询所有列
+     */
+    public Query<T> select(String... columns) {
+        if (columns == null || columns.length == 0) {
+            mSelection = null;
+            return this;
+        }
+        int[] selection = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            selection[i] = indexOf(columns[i]);
+        }
+        mSelection = selection;
+        return this;
+    }
+
+    public Query<T> equalTo(String column, Object value) {
+        if (value == null) {
+            return isNull(column);
+        }
+        return compare(OP_EQUAL, column, value);
+    }
+
+    public Query<T> notEqualTo(String column, Object value) {
+        if (value == null) {
+            return isNotNull(column);
+        }
+        return compare(OP_NOT_EQUAL, column, value);
+    }
+
+    public Query<T> greaterThan(String column, Object value) {
+        return compare(OP_GREATER, column, value);
+    }
+
+    public Query<T> greaterThanOrEqual(String column, Object value) {
+        return compare(OP_GREATER_EQUAL, column, value);
+    }
+
+    public Query<T> lessThan(String column, Object value) {
+        return compare(OP_LESS, column, value);
+    }
+
+    public Query<T> lessThanOrEqual(String column, Object value) {
+        return compare(OP_LESS_EQUAL, column, value);
+    }
+
+    /**
+     * @param pattern LIKE 模式，% 匹配任意字符串，_ 匹配单个字符
+     */
+    public Query<T> like(String column, String pattern) {
+        return compare(OP_LIKE, column, pattern);
+    }
+
+    /**
+     * low &lt;= column &lt;= high
+     */
+    public Query<T> between(String column, Object low, Object high) {
+        appendColumn(OP_BETWEEN, column);
+        mArgs.add(toArg(low));
+        mArgs.add(toArg(high));
+        return this;
+    }
+
+    /**
+     * column IN (?, ...)，values 为空时查询结果为空
+     */
+    public Query<T> in(String column, Collection<?> values) {
+        appendColumn(OP_IN, column);
+        mShape.append(':').append(values == null ? 0 : values.size());
+        if (values != null) {
+            for (Object value : values) {
+                mArgs.add(toArg(value));
+            }
+        }
+        return this;
+    }
+
+    public Query<T> isNull(String column) {
+        appendColumn(OP_IS_NULL, column);
+        return this;
+    }
+
+    public Query<T> isNotNull(String column) {
+        appendColumn(OP_IS_NOT_NULL, column);
+        return this;
+    }
+
+    public Query<T> orderBy(String column) {
+        appendColumn(ORDER_ASC, column);
+        return this;
+    }
+
+    public Query<T> orderByDesc(String column) {
+        appendColumn(ORDER_DESC, column);
+        return this;
+    }
+
+    /**
+     * @param limit 最多返回的行数，小于 0 表示不限制
+     */
+    public Query<T> limit(long limit) {
+        mLimit = limit;
+        return this;
+    }
+
+    /**
+     * @param offset 跳过的行数，小于等于 0 表示不跳过
+     */
+    public Query<T> offset(long offset) {
+        mOffset = offset;
+        return this;
+    }
+
+    /**
+     * 查询并一次性加载为 List
+     *
+     * @param db DBDatabase 引擎
+     * @return 查询结果，如果出错，返回空 List
+     */
+    public List<T> list(SQLiteDatabase db) {
+        List<T> result = new ArrayList<>();
+        CursorIterator<T> iterator = iterate(db);
+        if (iterator == null) {
+            return result;
+        }
+        try {
+            for (T value : iterator) {
+                result.add(value);
+            }
+        } finally {
+            iterator.close();
+        }
+        return result;
+    }
+
+    /**
+     * 查询并返回逐行加载的迭代器，提前结束时需要调用 close
+     *
+     * @param db DBDatabase 引擎
+     * @return 只能遍历一次的迭代器，如果出错，返回 null
+     */
+    public CursorIterator<T> iterate(SQLiteDatabase db) {
+        Cursor cursor = execute(db);
+        if (cursor == null) {
+            return null;
+        }
+        return new CursorIterator<>(cursor, new RowMapper<T>(mTable));
+    }
+
+    /**
+     * 查询第一行，不修改已设置的 limit
+     *
+     * @param db DBDatabase 引擎
+     * @return 第一行对应的对象，不存在时返回 null
+     */
+    public T first(SQLiteDatabase db) {
+        long limit = mLimit;
+        mLimit = 1;
+        CursorIterator<T> iterator;
+        try {
+            iterator = iterate(db);
+        } finally {
+            mLimit = limit;
+        }
+        if (iterator == null) {
+            return null;
+        }
+        try {
+            return iterator.hasNext() ? iterator.next() : null;
+        } finally {
+            iterator.close();
+        }
+    }
+
+    /**
+     * 只查询一列，按整数读取，NULL 读取为 0
+     *
+     * @param db DBDatabase 引擎
+     * @param column 列名
+     * @return 每行的值，如果出错，返回空数组
+     */
+    public long[] listLongs(SQLiteDatabase db, String column) {
+        Cursor cursor = execute(db, new int[] {indexOf(column)});
+        if (cursor == null) {
+            return new long[0];
+        }
+        try {
+            long[] result = new long[cursor.getCount()];
+            int count = 0;
+            while (cursor.moveToNext() && count < result.length) {
+                result[count++] = cursor.getLong(0);
+            }
+            return result;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * 只查询一列，按字符串读取
+     *
+     * @param db DBDatabase 引擎
+     * @param column 列名
+     * @return 每行的值，NULL 为 null，如果出错，返回空数组
+     */
+    public String[] listStrings(SQLiteDatabase db, String column) {
+        Cursor cursor = execute(db, new int[] {indexOf(column)});
+        if (cursor == null) {
+            return new String[0];
+        }
+        try {
+            String[] result = new String[cursor.getCount()];
+            int count = 0;
+            while (cursor.moveToNext() && count < result.length) {
+                result[count++] = cursor.getString(0);
+            }
+            return result;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * 按 {@link #select(String...)} 选择的列读取每行的值，类型与属性类型一致
+     *
+     * @param db DBDatabase 引擎
+     * @return 每行一个数组，顺序与选择的列一致，NULL 为 null，如果出错，返回空 List
+     */
+    public List<Object[]> listTuples(SQLiteDatabase db) {
+        List<Object[]> result = new ArrayList<>();
+        int[] selection = mSelection;
+        if (selection == null) {
+            selection = new int[mColumns.length];
+            for (int i = 0; i < selection.length; i++) {
+                selection[i] = i;
+            }
+        }
+        Cursor cursor = execute(db, selection);
+        if (cursor == null) {
+            return result;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                Object[] tuple = new Object[selection.length];
+                for (int i = 0; i < selection.length; i++) {
+                    if (!cursor.isNull(i)) {
+                        tuple[i] = SQLBuilder.readValue(cursor, i,
+                                                        mColumns[selection[i]].getClassType());
+                    }
+                }
+                result.add(tuple);
+            }
+        } finally {
+            cursor.close();
+        }
+        return result;
+    }
+
+    /**
+     * 统计满足条件的行数，忽略排序与分页
+     * 使用编译语句的 simpleQueryForLong，不创建 Cursor
+     *
+     * @param db DBDatabase 引擎
+     * @return 行数，如果出错，返回 -1
+     */
+    public long count(SQLiteDatabase db) {
+        if (db == null) {
+            return -1;
+        }
+        String shape = "c;" + mShape;
+        String sql = mTable.getShapeSQL(shape);
+        if (sql == null) {
+            StringBuilder where = new StringBuilder();
+            compileConditions(where, new StringBuilder());
+            sql = SQLBuilder.SELECT_COUNT_FROM + mTable.getName() + where;
+            mTable.setShapeSQL(shape, sql);
+        }
+        try {
+            SQLiteStatement statement = db.compileStatement(sql);
+            try {
+                SQLBuilder.bindArgs(statement, mArgs.toArray(), 1);
+                return statement.simpleQueryForLong();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 执行查询，返回原始 Cursor
+     *
+     * @param db DBDatabase 引擎
+     * @return Cursor，如果出错，返回 null
+     */
+    public Cursor execute(SQLiteDatabase db) {
+        return execute(db, mSelection);
+    }
+
+    /**
+     * 当前结构对应的 SQL 模板，带 ? 参数
+     */
+    public String buildSQL() {
+        return buildSQL(mSelection);
+    }
+
+    /**
+     * 与 {@link #buildSQL()} 对应的参数
+     */
+    public Object[] buildArgs() {
+        List<Object> args = new ArrayList<>(mArgs);
+        if (mLimit >= 0 || mOffset > 0) {
+            args.add(mLimit >= 0 ? mLimit : -1L);
+        }
+        if (mOffset > 0) {
+            args.add(mOffset);
+        }
+        return args.toArray();
+    }
+
+    private Cursor execute(SQLiteDatabase db, int[] selection) {
+        if (db == null) {
+            return null;
+        }
+        Object[] args = buildArgs();
+        return db.rawQueryWithFactory(new BindArgsCursorFactory(args), buildSQL(selection), null,
+                                      mTable.getName());
+    }
+
+    private String buildSQL(int[] selection) {
+        String shape = buildShape(selection);
+        String sql = mTable.getShapeSQL(shape);
+        if (sql == null) {
+            sql = compile(selection);
+            mTable.setShapeSQL(shape, sql);
+        }
+        return sql;
+    }
+
+    private String buildShape(int[] selection) {
+        StringBuilder shape = new StringBuilder(mShape.length() + 8);
+        if (selection != null) {
+            shape.append('s');
+            for (int index : selection) {
+                shape.append(index).append(',');
+            }
+            shape.append(';');
+        }
+        shape.append(mShape);
+        if (mLimit >= 0 || mOffset > 0) {
+            shape.append('L');
+        }
+        if (mOffset > 0) {
+            shape.append('O');
+        }
+        return shape.toString();
+    }
+
+    private String compile(int[] selection) {
+        StringBuilder where = new StringBuilder();
+        StringBuilder order = new StringBuilder();
+        compileConditions(where, order);
+
+        StringBuilder builder = new StringBuilder();
+        if (selection == null) {
+            builder.append(SQLBuilder.SELECT_ALL_FROM);
+        } else {
+            builder.append(SQLBuilder.SELECT);
+            for (int j = 0; j < selection.length; j++) {
+                if (j > 0) {
+                    builder.append(SQLBuilder.COMMA);
+                }
+                builder.append(mColumns[selection[j]].getName());
+            }
+            builder.append(SQLBuilder.FROM);
+        }
+        builder.append(mTable.getName());
+        builder.append(where).append(order);
+        if (mLimit >= 0 || mOffset > 0) {
+            builder.append(SQLBuilder.LIMIT).append(SQLBuilder.PLACEHOLDER);
+        }
+        if (mOffset > 0) {
+            builder.append(SQLBuilder.OFFSET).append(SQLBuilder.PLACEHOLDER);
+        }
+        return builder.toString();
+    }
+
+    private void compileConditions(StringBuilder where, StringBuilder order) {
+        int i = 0;
+        while (i < mShape.length()) {
+            char op = mShape.charAt(i++);
+            int end = i;
+            while (end < mShape.length() && Character.isDigit(mShape.charAt(end))) {
+                end++;
+            }
+            String name = mColumns[Integer.parseInt(mShape.substring(i, end))].getName();
+            i = end;
+            int count = 0;
+            if (op == OP_IN) {
+                end = ++i;
+                while (end < mShape.length() && Character.isDigit(mShape.charAt(end))) {
+                    end++;
+                }
+                count = Integer.parseInt(mShape.substring(i, end));
+                i = end;
+            }
+
+            if (op == ORDER_ASC || op == ORDER_DESC) {
+                order.append(order.length() == 0 ? SQLBuilder.ORDER_BY : SQLBuilder.COMMA);
+                order.append(name).append(op == ORDER_ASC ? SQLBuilder.ASC : SQLBuilder.DESC);
+                continue;
+            }
+            where.append(where.length() == 0 ? SQLBuilder.WHERE : SQLBuilder.AND);
+            appendCondition(where, op, name, count);
+        }
+    }
+
+    private static void appendCondition(StringBuilder builder, char op, String name, int count) {
+        builder.append(name);
+        switch (op) {
+            case OP_EQUAL:
+                builder.append(SQLBuilder.EQUAL).append(SQLBuilder.PLACEHOLDER);
+                break;
+            case OP_NOT_EQUAL:
+                builder.append(SQLBuilder.NOT_EQUAL).append(SQLBuilder.PLACEHOLDER);
+                break;
+            case OP_GREATER:
+                builder.append('>').append(SQLBuilder.PLACEHOLDER);
+                break;
+            case OP_GREATER_EQUAL:
+                builder.append(">=").append(SQLBuilder.PLACEHOLDER);
+                break;
+            case OP_LESS:
+                builder.append('<').append(SQLBuilder.PLACEHOLDER);
+                break;
+            case OP_LESS_EQUAL:
+                builder.append("<=").append(SQLBuilder.PLACEHOLDER);
+                break;
+            case OP_LIKE:
+                builder.append(SQLBuilder.LIKE).append(SQLBuilder.PLACEHOLDER);
+                break;
+            case OP_BETWEEN:
+                builder.append(SQLBuilder.BETWEEN).append(SQLBuilder.PLACEHOLDER)
+                        .append(SQLBuilder.AND).append(SQLBuilder.PLACEHOLDER);
+                break;
+            case OP_IN:
+                builder.append(SQLBuilder.IN).append(SQLBuilder.PARENTHESES_LEFT);
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) {
+                        builder.append(',');
+                    }
+                    builder.append(SQLBuilder.PLACEHOLDER);
+                }
+                builder.append(SQLBuilder.PARENTHESES_RIGHT);
+                break;
+            case OP_IS_NULL:
+                builder.append(SQLBuilder.IS_NULL);
+                break;
+            case OP_IS_NOT_NULL:
+            default:
+                builder.append(SQLBuilder.IS_NOT_NULL);
+                break;
+        }
+    }
+
+    private Query<T> compare(char op, String column, Object value) {
+        appendColumn(op, column);
+        mArgs.add(toArg(value));
+        return this;
+    }
+
+    private void appendColumn(char op, String column) {
+        mShape.append(op).append(indexOf(column));
+    }
+
+    private int indexOf(String column) {
+        int index = mTable.getColumnIndex(column);
+        if (index == -1) {
+            throw new IllegalArgumentException("no column " + column + " in table "
+                                                       + mTable.getName());
+        }
+        return index;
+    }
+
+    private static Object toArg(Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("null value, use isNull / isNotNull instead");
+        }
+        return SQLBuilder.toBindArg(value);
+    }
+}
@@ -0,0 +1,204 @@
+package com.sp.tiny.orm;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+
+import com.sp.tiny.orm.core.Column;
+import com.sp.tiny.orm.core.EntityKey;
+import com.sp.tiny.orm.core.SQLBuilder;
+import com.sp.tiny.orm.core.Table;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * author: 后知后觉(307817387/myz7656)
+ * email: whuzhanyuanmin@126.com
+ */
+
+/**
+ * 会话，通过 {@link TinyORM#openSession(SQLiteDatabase)} 创建
+ * 内部维护 identity map：同一会话内按主键查询同一行时直接返回已加载的对象，不再访问数据库，
+ * insert / update / delete 会同步更新 identity map。
+ * 会话中的对象保存了加载或写入时的快照，update 只写入相对快照发生变化的列，没有变化时不执行语句。
+ * 不是线程安全的；绕过会话直接修改数据库后需要调用 {@link #evict(Object)} 或 {@link #clear()}。
+ */
+public class Session {
+    private final TinyORM mTinyORM;
+    private final SQLBuilder mSQLBuilder;
+    private final SQLiteDatabase mDatabase;
+    private final HashMap<EntityKey, Entry> mIdentityMap;
+
+    Session(@NonNull TinyORM tinyORM, @NonNull SQLiteDatabase db) {
+        mTinyORM = tinyORM;
+        mSQLBuilder = tinyORM.getSQLBuilder();
+        mDatabase = db;
+        mIdentityMap = new HashMap<>();
+    }
+
+    public SQLiteDatabase getDatabase() {
+        return mDatabase;
+    }
+
+    /**
+     * 根据 object 的主键查询对象，已加载过的行直接返回会话中的对象
+     *
+     * @param object 设置了主键的 Bean 对象
+     * @return 会话中的对象，不存在时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T query(T object) {
+        EntityKey key = mSQLBuilder.buildEntityKey(object);
+        if (key == null) {
+            return (T) mTinyORM.query(mDatabase, object);
+        }
+        Entry cached = mIdentityMap.get(key);
+        if (cached != null) {
+            return (T) cached.mValue;
+        }
+        Object loaded = mTinyORM.query(mDatabase, object);
+        if (loaded != null) {
+            mIdentityMap.put(key, new Entry(loaded, mSQLBuilder.buildSnapshot(loaded)));
+        }
+        return (T) loaded;
+    }
+
+    /**
+     * 插入一行，成功后 object 成为会话中该行对应的对象，自增主键的行不会加入会话
+     *
+     * @return 同 {@link TinyORM#insert(SQLiteDatabase, Object)}
+     */
+    public long insert(Object object) {
+        long row = mTinyORM.insert(mDatabase, object);
+        EntityKey key = mSQLBuilder.buildEntityKey(object);
+        if (key == null) {
+            return row;
+        }
+        if (row != -1 && !isAutoIncrement(key.getTable())) {
+            mIdentityMap.put(key, new Entry(object, mSQLBuilder.buildSnapshot(object)));
+        } else {
+            mIdentityMap.remove(key);
+        }
+        return row;
+    }
+
+    /**
+     * 更新一行，成功后 object 成为会话中该行对应的对象
+     * object 是会话中的对象时只更新相对快照变化的列，没有变化时直接返回 0
+     *
+     * @return 更新的行数
+     */
+    public int update(Object object) {
+        EntityKey key = mSQLBuilder.buildEntityKey(object);
+        Entry entry = key != null ? mIdentityMap.get(key) : null;
+        if (entry == null || entry.mValue != object) {
+            int count = mTinyORM.update(mDatabase, object);
+            if (count > 0) {
+                attach(object);
+            }
+            return count;
+        }
+
+        List<Column> dirtyColumns = mSQLBuilder.buildDirtyColumns(object, entry.mSnapshot);
+        if (dirtyColumns == null) {
+            int count = mTinyORM.update(mDatabase, object);
+            entry.mSnapshot = mSQLBuilder.buildSnapshot(object);
+            return count;
+        }
+        if (dirtyColumns.isEmpty()) {
+            return 0;
+        }
+        int count = mTinyORM.updateColumns(mDatabase, key.getTable(), object, dirtyColumns);
+        if (count > 0) {
+            entry.mSnapshot = mSQLBuilder.buildSnapshot(object);
+        } else {
+            mIdentityMap.remove(key);
+        }
+        return count;
+    }
+
+    /**
+     * 只更新指定的列，其余列以数据库为准，因此会话中该行的对象会被移除
+     *
+     * @return 更新的行数
+     */
+    public int update(Object object, String[] columns) {
+        int count = mTinyORM.update(mDatabase, object, columns, null);
+        evict(object);
+        return count;
+    }
+
+    /**
+     * 插入或者更新一行，成功后 object 成为会话中该行对应的对象
+     */
+    public boolean insertOrUpdate(Object object) {
+        boolean success = mTinyORM.insertOrUpdate(mDatabase, object);
+        if (success) {
+            attach(object);
+        } else {
+            evict(object);
+        }
+        return success;
+    }
+
+    /**
+     * 删除一行，同时从会话中移除
+     */
+    public boolean delete(Object object) {
+        boolean success = mTinyORM.delete(mDatabase, object);
+        evict(object);
+        return success;
+    }
+
+    /**
+     * 会话中是否已经加载了 object 主键对应的行
+     */
+    public boolean contains(Object object) {
+        EntityKey key = mSQLBuilder.buildEntityKey(object);
+        return key != null && mIdentityMap.containsKey(key);
+    }
+
+    /**
+     * 从会话中移除 object 主键对应的行
+     */
+    public void evict(Object object) {
+        EntityKey key = mSQLBuilder.buildEntityKey(object);
+        if (key != null) {
+            mIdentityMap.remove(key);
+        }
+    }
+
+    public void clear() {
+        mIdentityMap.clear();
+    }
+
+    public int size() {
+        return mIdentityMap.size();
+    }
+
+    private static boolean isAutoIncrement(Table table) {
+        for (Column column : table.getPrimaryKey()) {
+            if (column.getId() != null && column.getId().isAutoIncrement()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void attach(Object object) {
+        EntityKey key = mSQLBuilder.buildEntityKey(object);
+        if (key != null) {
+            mIdentityMap.put(key, new Entry(object, mSQLBuilder.buildSnapshot(object)));
+        }
+    }
+
+    private static class Entry {
+        private final Object mValue;
+        private Object[] mSnapshot;
+
+        Entry(Object value, Object[] snapshot) {
+            mValue = value;
+            mSnapshot = snapshot;
+        }
+    }
+}
@@ -1,19 +1,47 @@
 package com.sp.tiny.orm;
 
-import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.sp.tiny.orm.core.BindArgsCursorFactory;
+import com.sp.tiny.orm.core.BulkLoadListener;
 import com.sp.tiny.orm.core.Column;
+import com.sp.tiny.orm.core.CursorIterator;
+import com.sp.tiny.orm.core.EntityCache;
+import com.sp.tiny.orm.core.EntityCreator;
+import com.sp.tiny.orm.core.EntityKey;
+import com.sp.tiny.orm.core.Page;
 import com.sp.tiny.orm.core.ResultValue;
+import com.sp.tiny.orm.core.RowMapper;
 import com.sp.tiny.orm.core.SQLBuilder;
+import com.sp.tiny.orm.core.SchemaMigrator;
+import com.sp.tiny.orm.core.StatementCache;
 import com.sp.tiny.orm.core.Table;
 import com.sp.tiny.orm.core.TableManager;
+import com.sp.tiny.orm.core.WarmUpListener;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * author: 后知后觉(307817387/myz7656)
@@ -23,13 +51,34 @@ import java.util.List;
 public class TinyORM {
     public static final int CONFLICT_REPLACE = 5;
 
+    /**
+     * ON CONFLICT DO UPDATE 需要 SQLite 3.24.0
+     */
+    private static final int UPSERT_MIN_VERSION = 3024000;
+    private static final String SQLITE_VERSION_SQL = "SELECT sqlite_version()";
+
     private static TinyORM sInstance;
     private final TableManager mTableManager;
     private final SQLBuilder mSQLBuilder;
+    private final SchemaMigrator mSchemaMigrator;
+    private final LinkedHashSet<Class<?>> mRegistered;
+    private volatile int mSQLiteVersion;
+
+    /**
+     * 编译过语句的数据库，出现新的数据库时清理所有表上已关闭数据库的语句
+     */
+    private final WeakHashMap<SQLiteDatabase, Boolean> mDatabases = new WeakHashMap<>();
+
+    /**
+     * 当前线程在事务中写过的缓存行，事务结束后才结束失效，见 {@link #flushWrites(SQLiteDatabase)}
+     */
+    private final ThreadLocal<List<PendingWrite>> mPendingWrites = new ThreadLocal<>();
 
     private TinyORM() {
         mTableManager = new TableManager();
         mSQLBuilder = new SQLBuilder(mTableManager);
+        mSchemaMigrator = new SchemaMigrator(mTableManager, mSQLBuilder);
+        mRegistered = new LinkedHashSet<>();
     }
 
     public static TinyORM getInstance() {
@@ -47,6 +96,150 @@ public class TinyORM {
         return this.mSQLBuilder;
     }
 
+    /**
+     * 打开一个会话，会话内按主键查询同一行只访问一次数据库
+     *
+     * @param db DBDatabase 引擎
+     * @return 会话，db 为 null 时返回 null
+     */
+    public Session openSession(SQLiteDatabase db) {
+        if (db == null) {
+            return null;
+        }
+        return new Session(this, db);
+    }
+
+    /**
+     * 设置 Bean 的实体缓存大小，覆盖 @Entity(cacheSize) 的配置
+     * 开启后 query 按主键命中缓存时不再访问数据库，返回的是缓存对象的副本，可以直接修改
+     *
+     * @param clazz Bean 对应的 class
+     * @param size 最多缓存的对象个数，小于等于 0 时关闭缓存
+     * @return 设置是否成功
+     */
+    public boolean setCacheSize(Class<?> clazz, int size) {
+        Table table = mTableManager.getTable(clazz);
+        if (table == null) {
+            return false;
+        }
+        synchronized (table) {
+            EntityCache cache = table.getEntityCache();
+            if (size <= 0) {
+                table.setEntityCache(null);
+                if (cache != null) {
+                    cache.clear();
+                }
+            } else if (cache != null) {
+                cache.resize(size);
+            } else {
+                table.setEntityCache(new EntityCache(size));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 获取 Bean 的实体缓存，可用于读取命中、未命中、淘汰次数，或者在直接修改数据库后清空
+     *
+     * @param clazz Bean 对应的 class
+     * @return 未开启缓存时返回 null
+     */
+    public EntityCache getEntityCache(Class<?> clazz) {
+        Table table = mTableManager.getTable(clazz);
+        return table != null ? table.getEntityCache() : null;
+    }
+
+    /**
+     * 登记需要预热的 Bean，只做记录，由 {@link #warmUp(Executor, WarmUpListener)} 统一初始化
+     * 未登记的 Bean 仍会在第一次使用时初始化
+     *
+     * @param classes Bean 对应的 class
+     */
+    public void register(Class<?>... classes) {
+        if (classes == null) {
+            return;
+        }
+        synchronized (mRegistered) {
+            for (Class<?> clazz : classes) {
+                if (clazz != null) {
+                    mRegistered.add(clazz);
+                }
+            }
+        }
+    }
+
+    /**
+     * 在 executor 上并行初始化已登记的 Bean：Table、Column、RowAdapter 以及各类 SQL 模板
+     * 每个 Bean 一个任务，executor 并发度决定并行度，适合在冷启动时放到后台线程执行
+     *
+     * @param executor 执行预热任务的线程池
+     * @param listener 进度回调，可为 null
+     * @return 任务是否已提交，executor 为 null 时返回 false
+     */
+    public boolean warmUp(Executor executor, final WarmUpListener listener) {
+        if (executor == null) {
+            return false;
+        }
+        Class<?>[] classes;
+        synchronized (mRegistered) {
+            classes = mRegistered.toArray(new Class<?>[0]);
+        }
+        final long start = System.nanoTime();
+        if (classes.length == 0) {
+            if (listener != null) {
+                listener.onFinished(0);
+            }
+            return true;
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(classes.length);
+        for (final Class<?> clazz : classes) {
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    long begin = System.nanoTime();
+                    boolean success = false;
+                    try {
+                        success = mSQLBuilder.prepare(clazz);
+                    } finally {
+                        if (listener != null) {
+                            listener.onEntityReady(clazz, System.nanoTime() - begin, success);
+                        }
+                        if (remaining.decrementAndGet() == 0 && listener != null) {
+                            listener.onFinished(System.nanoTime() - start);
+                        }
+                    }
+                }
+            };
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                if (listener != null) {
+                    listener.onEntityReady(clazz, 0, false);
+                }
+                if (remaining.decrementAndGet() == 0 && listener != null) {
+                    listener.onFinished(System.nanoTime() - start);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 释放某个数据库上缓存的 SQLiteStatement，应在关闭数据库之前调用
+     * 未调用时，缓存会在数据库关闭后的下一次访问或第一次访问新的数据库时被清理
+     *
+     * @param db DBDatabase 引擎
+     */
+    public void releaseStatements(SQLiteDatabase db) {
+        if (db == null) {
+            return;
+        }
+        for (Table table : mTableManager.getTables()) {
+            table.getStatementCache().release(db);
+        }
+    }
+
     /**
      * 根据 Bean 定义创建数据库表
      *
@@ -59,21 +252,68 @@ public class TinyORM {
             if (db == null) {
                 return false;
             }
-            String sql;
-            sql = mSQLBuilder.buildCreateTableSQL(clazz);
-            if (!TextUtils.isEmpty(sql)) {
-                db.execSQL(sql);
+            mSchemaMigrator.create(db, clazz);
+        } catch (SQLException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 根据 Bean 定义批量创建数据库表与索引，适合在每次启动时调用
+     * 表结构指纹（建表与建索引语句的哈希）记录在 tiny_orm_schema 表中，指纹一致的 Bean 不再执行 DDL，
+     * 指纹变化或者首次创建的 Bean 在同一个事务中按 {@link SchemaMigrator} 迁移并更新指纹：
+     * 新增列使用 ALTER TABLE ADD COLUMN，索引按名称增删，无法原地修改时重建表并复制一次数据
+     * 通过其他途径删除了表时需要调用 {@link #deleteTable(SQLiteDatabase, Class)} 或者 createTable
+     *
+     * @param db DBDatabase 引擎
+     * @param classes Bean 对应的 class
+     * @return 创建是否成功，任一 Bean 不是 Entity 或者执行失败时返回 false，失败时事务回滚
+     */
+    public boolean createTables(SQLiteDatabase db, Class<?>... classes) {
+        if (db == null || classes == null) {
+            return false;
+        }
+        Map<String, String> fingerprints = queryFingerprints(db);
+        List<Class<?>> changed = new ArrayList<>();
+        List<String> changedFingerprints = new ArrayList<>();
+        for (Class<?> clazz : classes) {
+            Table table = mTableManager.getTable(clazz);
+            String fingerprint = mSQLBuilder.buildSchemaFingerprint(clazz);
+            if (table == null || fingerprint == null) {
+                return false;
             }
-            String[] indexSQLs = mSQLBuilder.buildCreateIndexSQL(clazz);
-            if (indexSQLs != null && indexSQLs.length > 0) {
-                for (String indexSQL : indexSQLs) {
-                    if (!TextUtils.isEmpty(indexSQL)) {
-                        db.execSQL(indexSQL);
-                    }
-                }
+            if (!fingerprint.equals(fingerprints.get(table.getName()))) {
+                changed.add(clazz);
+                changedFingerprints.add(fingerprint);
+            }
+        }
+        if (changed.isEmpty()) {
+            return true;
+        }
+
+        boolean transaction = !db.inTransaction();
+        if (transaction) {
+            db.beginTransaction();
+        }
+        try {
+            db.execSQL(mSQLBuilder.buildCreateSchemaTableSQL());
+            String saveSQL = mSQLBuilder.buildSaveFingerprintSQL();
+            for (int i = 0; i < changed.size(); i++) {
+                Class<?> clazz = changed.get(i);
+                mSchemaMigrator.migrate(db, clazz);
+                db.execSQL(saveSQL, new Object[] {
+                        mTableManager.getTable(clazz).getName(), changedFingerprints.get(i)});
+            }
+            if (transaction) {
+                db.setTransactionSuccessful();
             }
         } catch (SQLException e) {
             return false;
+        } finally {
+            if (transaction) {
+                db.endTransaction();
+            }
         }
         return true;
     }
@@ -94,6 +334,11 @@ public class TinyORM {
             sql = mSQLBuilder.buildDeleteTableSQL(clazz);
             if (!TextUtils.isEmpty(sql)) {
                 db.execSQL(sql);
+                Table table = mTableManager.getTable(clazz);
+                deleteFingerprint(db, table);
+                if (table.getEntityCache() != null) {
+                    table.getEntityCache().clear();
+                }
             }
         } catch (SQLException e) {
             return false;
@@ -167,10 +412,13 @@ public class TinyORM {
             return row;
         }
 
-        ContentValues values = mSQLBuilder.buildInsertValues(object);
-        if (values != null) {
-            String name = table.getName();
-            row = db.insertWithOnConflict(name, null, values, CONFLICT_REPLACE);
+        SQLiteStatement statement = acquireStatement(db, table, StatementCache.INSERT);
+        if (statement != null) {
+            try {
+                row = execute(db, statement, table, object, StatementCache.INSERT);
+            } catch (SQLException e) {
+                row = -1;
+            }
         }
         if (row <= 0) {
             Log.e("TinyORM", "insert row = " + row + " , object:" + object);
@@ -195,11 +443,13 @@ public class TinyORM {
         }
 
         int count = 0;
-        String sql = mSQLBuilder.buildWhereSQL(object);
-
-        if (!TextUtils.isEmpty(sql)) {
-            String name = table.getName();
-            count = db.delete(name, sql, null);
+        SQLiteStatement statement = acquireStatement(db, table, StatementCache.DELETE);
+        if (statement != null) {
+            try {
+                count = (int) execute(db, statement, table, object, StatementCache.DELETE);
+            } catch (SQLException e) {
+                count = 0;
+            }
         }
         return count > 0;
     }
@@ -225,27 +475,68 @@ public class TinyORM {
             return false;
         }
 
-        int count = 0;
-        String sql = mSQLBuilder.buildWhereSQL(object);
-        if (!TextUtils.isEmpty(sql)) {
-            String name = table.getName();
-            Cursor cursor = null;
-            try {
-                cursor = db.query(name,
-                                         null,
-                                         sql,
-                                         null, null, null, null, "1");
-                count = cursor.getCount();
-            } catch (Throwable ignored) {
+        flushWrites(db);
+        EntityCache cache = table.getEntityCache();
+        if (cache != null) {
+            EntityKey key = EntityKey.of(table, mSQLBuilder.buildWhereArgs(object));
+            if (key != null && cache.get(db, key) != null) {
+                return true;
+            }
+        }
 
-            } finally {
-                if (cursor != null) {
-                    cursor.close();
+        /**
+         * 编译好的 SELECT EXISTS(...)，不创建 Cursor 与 CursorWindow
+         */
+        SQLiteStatement statement = acquireStatement(db, table, StatementCache.EXISTS);
+        if (statement == null) {
+            return false;
+        }
+        try {
+            return execute(db, statement, table, object, StatementCache.EXISTS) > 0;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 统计表中满足条件的行数
+     * 没有条件时使用缓存的编译语句，有条件时每次编译，相同的条件可以命中数据库连接上的语句缓存
+     *
+     * @param db DBDatabase 引擎
+     * @param clazz Bean 对应的 class
+     * @param where 查询条件，不含 WHERE，为 null 时统计所有行
+     * @param args 条件参数，按类型绑定
+     * @return 行数，如果出错，返回 -1
+     */
+    public long count(SQLiteDatabase db, Class<?> clazz, String where, Object... args) {
+        if (db == null) {
+            return -1;
+        }
+        Table table = mTableManager.getTable(clazz);
+        if (table == null) {
+            return -1;
+        }
+        try {
+            if (TextUtils.isEmpty(where)) {
+                SQLiteStatement statement = acquireStatement(db, table, StatementCache.COUNT);
+                if (statement == null) {
+                    return -1;
+                }
+                synchronized (statement) {
+                    return statement.simpleQueryForLong();
                 }
             }
+            String sql = mSQLBuilder.buildCountSQL(clazz, where);
+            SQLiteStatement statement = db.compileStatement(sql);
+            try {
+                SQLBuilder.bindArgs(statement, toBindArgs(args), 1);
+                return statement.simpleQueryForLong();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            return -1;
         }
-
-        return count > 0;
     }
 
 
@@ -264,14 +555,29 @@ public class TinyORM {
         if (table == null) {
             return null;
         }
-        Cursor cursor = null;
-        try {
-            String sql = mSQLBuilder.buildWhereSQL(object);
-            if (!TextUtils.isEmpty(sql)) {
-                String name = table.getName();
-                cursor = db.query(name, null, sql, null, null, null, null);
+        String sql = mSQLBuilder.buildQuerySQL(table.getClazz());
+        if (TextUtils.isEmpty(sql)) {
+            return null;
+        }
+        Object[] args = mSQLBuilder.buildWhereArgs(object);
+
+        flushWrites(db);
+        EntityCache cache = table.getEntityCache();
+        EntityCreator creator = table.getCreator();
+        EntityKey key = cache != null && creator != null ? EntityKey.of(table, args) : null;
+        long version = 0;
+        if (key != null) {
+            Object cached = cache.get(db, key);
+            if (cached != null) {
+                return creator.isImmutable() ? cached : creator.copy(cached);
             }
+            version = cache.version();
+        }
 
+        Cursor cursor = null;
+        try {
+            String name = table.getName();
+            cursor = db.rawQueryWithFactory(new BindArgsCursorFactory(args), sql, null, name);
             if (cursor == null) {
                 return null;
             }
@@ -279,7 +585,11 @@ public class TinyORM {
                 return null;
             }
             cursor.moveToFirst();
-            return query(table.getClazz(), cursor);
+            Object value = query(table.getClazz(), cursor);
+            if (key != null && value != null) {
+                cache.put(db, key, creator.isImmutable() ? value : creator.copy(value), version);
+            }
+            return value;
         } finally {
             if (cursor != null) {
                 cursor.close();
@@ -287,6 +597,40 @@ public class TinyORM {
         }
     }
 
+    /**
+     * 根据 Bean 对象的主键查询对象，只查询指定的列，其余属性保持默认值
+     * 结果只包含部分列，不经过实体缓存
+     *
+     * @param db DBDatabase 引擎
+     * @param object Bean 对象
+     * @param columns 需要查询的列，为 null 时同 {@link #query(SQLiteDatabase, Object)}
+     * @return 部分填充的对象，如果不存在或者列名无效，返回 null
+     */
+    public Object query(SQLiteDatabase db, Object object, String[] columns) {
+        if (columns == null) {
+            return query(db, object);
+        }
+        if (db == null) {
+            return null;
+        }
+        Table table = mTableManager.getTable(object);
+        Object[] args = mSQLBuilder.buildWhereArgs(object);
+        if (table == null || args == null) {
+            return null;
+        }
+        Query<Object> query = new Query<>(table);
+        try {
+            query.select(columns);
+            int index = 0;
+            for (Column primaryKey : table.getPrimaryKey()) {
+                query.equalTo(primaryKey.getName(), args[index++]);
+            }
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return query.first(db);
+    }
+
     /**
      * 根据 Cursor 的值加载对象
      *
@@ -299,104 +643,519 @@ public class TinyORM {
     }
 
     /**
-     * 更新数据库中的一行
+     * 把 Cursor 当前行写入已有对象，值为 NULL 的列重置为 null 或者 0，Cursor 中不存在的列保持不变
+     * 遍历多行时使用 {@link #queryAllInto} 或者 {@link RowMapper#mapInto}，列位置只解析一次
      *
-     * @param db DBDatabase 引擎
-     * @param object 需要更新的对象
-     * @return 受到影响的行数
+     * @param cursor 数据库游标，需要已经移动到某一行
+     * @param target 被覆盖的对象
+     * @return 是否加载成功
      */
-    public int update(SQLiteDatabase db, Object object) {
-        return update(db, object, null, null);
+    public <T> boolean queryInto(Cursor cursor, T target) {
+        if (cursor == null || target == null) {
+            return false;
+        }
+        Table table = mTableManager.getTable(target);
+        if (table == null) {
+            return false;
+        }
+        return new RowMapper<T>(table).mapInto(cursor, target);
     }
 
     /**
-     * 按条件更新数据库中的一行
-     * 如果列集不为 null, 则说明指更新了某些列，如果有需要获取更新后的完整数据，则通过传入的 ResultValue 对象返回
+     * 按条件查询多行，返回逐行加载的迭代器
+     * 对象随 Cursor 前进逐个加载，遍历结束时自动关闭 Cursor，提前结束时需要调用 close
      *
      * @param db DBDatabase 引擎
-     * @param object 需要更新的对象
-     * @param columns 选中的列集合，如果为 null，则更新所有列
-     * @param result 更新成功之后完整的数据 A，如果执行失败，则不设置 B，如果执行成功，columns 为 null, 则返回原对象 C，如果执行成功，columns 不为 null，则调用 query 获取更新后的值
-     * @return 受到影响的行数
+     * @param clazz 需要加载的对象 class
+     * @param selection 查询条件，不含 WHERE，为 null 时查询所有行
+     * @param selectionArgs 查询条件参数
+     * @param orderBy 排序，不含 ORDER BY
+     * @param limit 行数限制，不含 LIMIT
+     * @return 只能遍历一次的迭代器，如果出错，返回 null
      */
-    public int update(SQLiteDatabase db, Object object, String[] columns,
-                      ResultValue<Object> result) {
+    public <T> CursorIterator<T> queryAll(SQLiteDatabase db, Class<T> clazz, String selection,
+                                          String[] selectionArgs, String orderBy,
+                                          String limit) {
         if (db == null) {
-            return -1;
+            return null;
         }
-        Table table = mTableManager.getTable(object);
+        Table table = mTableManager.getTable(clazz);
         if (table == null) {
-            return -1;
+            return null;
         }
-        int count = 0;
-        ContentValues values = mSQLBuilder.buildUpdateValues(object, columns);
-        String sql = mSQLBuilder.buildWhereSQL(object);
+        Cursor cursor = db.query(table.getName(), null, selection, selectionArgs, null, null,
+                                 orderBy, limit);
+        if (cursor == null) {
+            return null;
+        }
+        return new CursorIterator<>(cursor, new RowMapper<T>(table));
+    }
 
-        if (!TextUtils.isEmpty(sql) && values != null) {
-            String name = table.getName();
-            count = db.update(name, values, sql, null);
+    /**
+     * 按条件查询多行，每一行都写入 target 并返回它，遍历过程中不创建对象，参数同 {@link #queryAll}
+     * 返回的对象在下一次 next 时被覆盖，需要保留时自行复制
+     *
+     * @param target 复用的对象，同时决定查询的表
+     * @return 只能遍历一次的迭代器，如果出错，返回 null
+     */
+    public <T> CursorIterator<T> queryAllInto(SQLiteDatabase db, T target, String selection,
+                                              String[] selectionArgs, String orderBy,
+                                              String limit) {
+        if (db == null || target == null) {
+            return null;
+        }
+        Table table = mTableManager.getTable(target);
+        if (table == null) {
+            return null;
+        }
+        Cursor cursor = db.query(table.getName(), null, selection, selectionArgs, null, null,
+                                 orderBy, limit);
+        if (cursor == null) {
+            return null;
         }
+        return new CursorIterator<>(cursor, new RowMapper<T>(table), target);
+    }
 
-        if (count > 0 && result != null) {
-            if (columns == null) {
-                result.setValue(object);
-            } else {
-                Object value = query(db, object);
-                result.setValue(value);
+    /**
+     * 按条件查询多行，一次性加载为 List，参数同 {@link #queryAll}
+     *
+     * @return 查询结果，如果出错，返回空 List
+     */
+    public <T> List<T> queryList(SQLiteDatabase db, Class<T> clazz, String selection,
+                                 String[] selectionArgs, String orderBy, String limit) {
+        List<T> result = new ArrayList<>();
+        CursorIterator<T> iterator = queryAll(db, clazz, selection, selectionArgs, orderBy,
+                                              limit);
+        if (iterator == null) {
+            return result;
+        }
+        try {
+            for (T value : iterator) {
+                result.add(value);
             }
+        } finally {
+            iterator.close();
         }
-        return count;
+        return result;
     }
 
     /**
-     * 往数据库中插入一行
-     * A，如果不存在，与 insert 行为一致
-     * B，如果存在，与 update 行为一致
+     * 创建按列名构造的查询
      *
-     * @param db DBDatabase 引擎
-     * @param object 需要插入的对象
-     * @return 执行是否成功
+     * @param clazz 需要加载的对象 class
+     * @return 查询，不是 Entity 时返回 null
      */
-    public boolean insertOrUpdate(SQLiteDatabase db, Object object) {
-        return insertOrUpdate(db, object, null, null);
+    public <T> Query<T> newQuery(Class<T> clazz) {
+        Table table = mTableManager.getTable(clazz);
+        if (table == null) {
+            return null;
+        }
+        return new Query<>(table);
     }
 
     /**
-     * 往数据库中插入一行
-     * A，如果不存在，与 insert 行为一致
-     * B，如果存在，与 update 行为一致
+     * 键集分页，按索引列与主键升序返回 pageSize 行，翻页代价与页码无关，不会因为前面的行变化而重复或遗漏
+     * 与 SQLite 一致，排序列为 NULL 的行排在非 NULL 的行之前
      *
      * @param db DBDatabase 引擎
-     * @param object 需要插入的对象
-     * @param columns 需要更新的列，如果是 insert，则忽略
-     * @param result 更新后的完整结果
-     * @return 执行是否成功
+     * @param clazz 需要加载的对象 class
+     * @param indexName 排序使用的 @Index 索引名，为 null 时按主键排序
+     * @param token 上一页返回的 {@link Page#getNextToken()}，为 null 时查询第一页
+     * @param pageSize 每页行数
+     * @return 一页结果，如果参数或者令牌无效，返回 null
      */
-    public boolean insertOrUpdate(SQLiteDatabase db, Object object, String[] columns,
-                                  ResultValue<Object> result) {
-        if (db == null) {
-            return false;
+    public <T> Page<T> queryPage(SQLiteDatabase db, Class<T> clazz, String indexName,
+                                 String token, int pageSize) {
+        Table table = mTableManager.getTable(clazz);
+        if (db == null || table == null || pageSize <= 0) {
+            return null;
         }
-        Table table = mTableManager.getTable(object);
+        Column[] columns = mSQLBuilder.buildKeysetColumns(clazz, indexName);
+        if (columns == null) {
+            return null;
+        }
+        Object[] values = null;
+        Object[] args = new Object[0];
+        StringBuilder shape = new StringBuilder("k");
+        if (token != null) {
+            values = SQLBuilder.readPageToken(table.getName(), columns, token);
+            if (values == null) {
+                return null;
+            }
+            args = SQLBuilder.buildKeysetArgs(values);
+            /**
+             * NULL 值会改变条件的形式，按每列是否为 NULL 区分缓存的 SQL
+             */
+            for (Object value : values) {
+                shape.append(value == null ? '0' : '1');
+            }
+        }
+        shape.append(';').append(indexName == null ? "" : indexName);
+        String sql = table.getShapeSQL(shape.toString());
+        if (sql == null) {
+            sql = mSQLBuilder.buildKeysetSQL(clazz, columns, values);
+            if (sql == null) {
+                return null;
+            }
+            table.setShapeSQL(shape.toString(), sql);
+        }
+        Object[] bindArgs = Arrays.copyOf(args, args.length + 1);
+        bindArgs[args.length] = (long) pageSize + 1;
+        Cursor cursor = db.rawQueryWithFactory(new BindArgsCursorFactory(bindArgs), sql, null,
+                                               table.getName());
+        List<T> items = new ArrayList<>();
+        if (cursor == null) {
+            return new Page<>(items, null);
+        }
+        Object[] last = null;
+        try {
+            RowMapper<T> mapper = new RowMapper<>(table);
+            int[] indexes = new int[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                indexes[i] = cursor.getColumnIndex(columns[i].getName());
+            }
+            while (items.size() < pageSize && cursor.moveToNext()) {
+                items.add(mapper.map(cursor));
+                last = SQLBuilder.readKeysetValues(cursor, columns, indexes);
+            }
+            if (!cursor.moveToNext()) {
+                last = null;
+            }
+        } finally {
+            cursor.close();
+        }
+        String nextToken = last == null
+                ? null : SQLBuilder.buildPageToken(table.getName(), columns, last);
+        return new Page<>(items, nextToken);
+    }
+
+    /**
+     * 创建可复用的行加载器，遍历大量行时代替 query(Class, Cursor)
+     * 列位置只在第一次遇到某个 Cursor 时解析，之后每行按位置读取
+     *
+     * @param clazz 需要加载的对象 class
+     * @return 行加载器，如果 clazz 不是 Entity，返回 null
+     */
+    public <T> RowMapper<T> newRowMapper(Class<T> clazz) {
+        Table table = mTableManager.getTable(clazz);
         if (table == null) {
-            return false;
+            return null;
         }
+        return new RowMapper<>(table);
+    }
 
-        if (exist(db, object)) {
-            return update(db, object, columns, result) > 0;
+    /**
+     * 生成主键对应的 EntityKey，用于读取 queryByIds 的结果
+     *
+     * @param clazz Bean 对应的 class
+     * @param id 单主键时为主键值，复合主键时为按主键顺序排列的 List 或者 Object[]
+     * @return 不是 Entity 或者主键值无效时返回 null
+     */
+    public EntityKey keyOf(Class<?> clazz, Object id) {
+        return EntityKey.of(mTableManager.getTable(clazz), mSQLBuilder.buildIdArgs(clazz, id));
+    }
+
+    /**
+     * 按主键批量查询，按 SQLite 参数上限分批执行 WHERE pk IN (?, ...)
+     *
+     * @param db DBDatabase 引擎
+     * @param clazz Bean 对应的 class
+     * @param ids 单主键时为主键值，复合主键时为按主键顺序排列的 List 或者 Object[]
+     * @return 主键到对象的映射，键可由 {@link #keyOf(Class, Object)} 生成，不存在的主键不在结果中
+     */
+    public <T> Map<EntityKey, T> queryByIds(SQLiteDatabase db, Class<T> clazz,
+                                            Collection<?> ids) {
+        Map<EntityKey, T> result = new LinkedHashMap<>();
+        Table table = mTableManager.getTable(clazz);
+        if (db == null || table == null || ids == null) {
+            return result;
+        }
+        List<Object[]> args = buildIdArgs(table, ids);
+        if (args.isEmpty()) {
+            return result;
+        }
+        RowMapper<T> mapper = new RowMapper<>(table);
+        int chunk = SQLBuilder.MAX_VARIABLES / table.getPrimaryKey().size();
+        for (int start = 0; start < args.size(); start += chunk) {
+            int count = Math.min(chunk, args.size() - start);
+            String sql = mSQLBuilder.buildQueryByIdsSQL(clazz, count);
+            Object[] bindArgs = flatten(args, start, count);
+            Cursor cursor = db.rawQueryWithFactory(new BindArgsCursorFactory(bindArgs), sql,
+                                                   null, table.getName());
+            if (cursor == null) {
+                continue;
+            }
+            try {
+                while (cursor.moveToNext()) {
+                    T value = mapper.map(cursor);
+                    EntityKey key = mSQLBuilder.buildEntityKey(value);
+                    if (key != null) {
+                        result.put(key, value);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按主键批量判断是否存在，按 SQLite 参数上限分批执行
+     *
+     * @param db DBDatabase 引擎
+     * @param clazz Bean 对应的 class
+     * @param ids 单主键时为主键值，复合主键时为按主键顺序排列的 List 或者 Object[]
+     * @return 第 i 位表示 ids 中第 i 个主键对应的行是否存在
+     */
+    public BitSet existByIds(SQLiteDatabase db, Class<?> clazz, List<?> ids) {
+        BitSet result = new BitSet();
+        Table table = mTableManager.getTable(clazz);
+        if (db == null || table == null || ids == null) {
+            return result;
+        }
+        EntityKey[] keys = new EntityKey[ids.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = EntityKey.of(table, mSQLBuilder.buildIdArgs(clazz, ids.get(i)));
+        }
+        markExisting(db, table, keys, result);
+        return result;
+    }
+
+    /**
+     * 批量判断对象对应的行是否存在，对象可以属于不同的 Bean
+     *
+     * @param db DBDatabase 引擎
+     * @param objects 设置了主键的 Bean 对象
+     * @return 第 i 位表示 objects 中第 i 个对象对应的行是否存在
+     */
+    public BitSet existAll(SQLiteDatabase db, List<?> objects) {
+        BitSet result = new BitSet();
+        if (db == null || objects == null) {
+            return result;
+        }
+        Map<Table, EntityKey[]> groups = new LinkedHashMap<>();
+        for (int i = 0; i < objects.size(); i++) {
+            EntityKey key = mSQLBuilder.buildEntityKey(objects.get(i));
+            if (key == null) {
+                continue;
+            }
+            EntityKey[] keys = groups.get(key.getTable());
+            if (keys == null) {
+                keys = new EntityKey[objects.size()];
+                groups.put(key.getTable(), keys);
+            }
+            keys[i] = key;
+        }
+        for (Map.Entry<Table, EntityKey[]> group : groups.entrySet()) {
+            markExisting(db, group.getKey(), group.getValue(), result);
+        }
+        return result;
+    }
+
+    /**
+     * 按主键批量删除，按 SQLite 参数上限分批执行 DELETE ... WHERE pk IN (?, ...)
+     * 如果调用时已经在事务中，则加入当前事务，否则在一个事务中完成
+     *
+     * @param db DBDatabase 引擎
+     * @param clazz Bean 对应的 class
+     * @param ids 单主键时为主键值，复合主键时为按主键顺序排列的 List 或者 Object[]
+     * @return 删除的行数，失败时返回 -1
+     */
+    public int deleteByIds(SQLiteDatabase db, Class<?> clazz, Collection<?> ids) {
+        Table table = mTableManager.getTable(clazz);
+        if (db == null || table == null || ids == null) {
+            return -1;
+        }
+        List<Object[]> args = buildIdArgs(table, ids);
+        if (args.isEmpty()) {
+            return 0;
+        }
+        int deleted = 0;
+        int chunk = SQLBuilder.MAX_VARIABLES / table.getPrimaryKey().size();
+        EntityCache cache = table.getEntityCache();
+        if (cache != null) {
+            for (Object[] values : args) {
+                beginWrite(db, cache, EntityKey.of(table, values));
+            }
+        }
+        boolean transaction = !db.inTransaction();
+        if (transaction) {
+            db.beginTransaction();
+        }
+        try {
+            for (int start = 0; start < args.size(); start += chunk) {
+                int count = Math.min(chunk, args.size() - start);
+                SQLiteStatement statement =
+                        db.compileStatement(mSQLBuilder.buildDeleteByIdsSQL(clazz, count));
+                try {
+                    SQLBuilder.bindArgs(statement, flatten(args, start, count), 1);
+                    deleted += statement.executeUpdateDelete();
+                } finally {
+                    statement.close();
+                }
+            }
+            if (transaction) {
+                db.setTransactionSuccessful();
+            }
+        } catch (SQLException e) {
+            deleted = -1;
+        } finally {
+            if (transaction) {
+                db.endTransaction();
+            }
+            flushWrites(db);
+        }
+        return deleted;
+    }
+
+    /**
+     * 更新数据库中的一行
+     *
+     * @param db DBDatabase 引擎
+     * @param object 需要更新的对象
+     * @return 受到影响的行数
+     */
+    public int update(SQLiteDatabase db, Object object) {
+        return update(db, object, null, null);
+    }
+
+    /**
+     * 按条件更新数据库中的一行
+     * 如果列集不为 null, 则说明指更新了某些列，如果有需要获取更新后的完整数据，则通过传入的 ResultValue 对象返回
+     *
+     * @param db DBDatabase 引擎
+     * @param object 需要更新的对象
+     * @param columns 选中的列集合，如果为 null，则更新所有列
+     * @param result 更新成功之后完整的数据 A，如果执行失败，则不设置 B，如果执行成功，columns 为 null, 则返回原对象 C，如果执行成功，columns 不为 null，则调用 query 获取更新后的值
+     * @return 受到影响的行数
+     */
+    public int update(SQLiteDatabase db, Object object, String[] columns,
+                      ResultValue<Object> result) {
+        if (db == null) {
+            return -1;
+        }
+        Table table = mTableManager.getTable(object);
+        if (table == null) {
+            return -1;
+        }
+        int count = 0;
+        if (columns == null) {
+            SQLiteStatement statement = acquireStatement(db, table, StatementCache.UPDATE);
+            if (statement != null) {
+                try {
+                    count = (int) execute(db, statement, table, object, StatementCache.UPDATE);
+                } catch (SQLException e) {
+                    count = 0;
+                }
+            }
         } else {
-            long rowId = insert(db, object);
-            if (rowId != -1 && result != null) {
+            List<Column> updateColumns = mSQLBuilder.buildUpdateColumns(object, columns);
+            count = updateColumns(db, table, object, updateColumns);
+        }
+
+        if (count > 0 && result != null) {
+            if (columns == null) {
                 result.setValue(object);
+            } else {
+                Object value = query(db, object);
+                result.setValue(value);
             }
-            return rowId != -1;
         }
+        return count;
+    }
+
+    /**
+     * 往数据库中插入一行
+     * A，如果不存在，与 insert 行为一致
+     * B，如果存在，与 update 行为一致
+     *
+     * @param db DBDatabase 引擎
+     * @param object 需要插入的对象
+     * @return 执行是否成功
+     */
+    public boolean insertOrUpdate(SQLiteDatabase db, Object object) {
+        return insertOrUpdate(db, object, null, null);
+    }
+
+    /**
+     * 往数据库中插入一行
+     * A，如果不存在，与 insert 行为一致
+     * B，如果存在，与 update 行为一致
+     *
+     * @param db DBDatabase 引擎
+     * @param object 需要插入的对象
+     * @param columns 需要更新的列，如果是 insert，则忽略
+     * @param result 更新后的完整结果
+     * @return 执行是否成功，非主键列的 UNIQUE 冲突与 insert 一样替换冲突的行
+     */
+    public boolean insertOrUpdate(SQLiteDatabase db, Object object, String[] columns,
+                                  ResultValue<Object> result) {
+        if (db == null) {
+            return false;
+        }
+        Table table = mTableManager.getTable(object);
+        if (table == null) {
+            return false;
+        }
+
+        /**
+         * 优先使用 INSERT ... ON CONFLICT DO UPDATE，一条语句完成。
+         * ON CONFLICT(pk) 不处理其他 UNIQUE 约束，约束失败时退回到先查询再写入，
+         * 与 insert 的 INSERT OR REPLACE 保持一致
+         */
+        long count = -1;
+        if (columns == null) {
+            SQLiteStatement statement = acquireStatement(db, table, StatementCache.UPSERT);
+            if (statement != null) {
+                try {
+                    count = execute(db, statement, table, object, StatementCache.UPSERT);
+                } catch (SQLiteConstraintException e) {
+                    count = -1;
+                } catch (SQLException e) {
+                    count = 0;
+                }
+            }
+        } else if (supportsUpsert(db)) {
+            List<Column> updateColumns = mSQLBuilder.buildUpdateColumns(object, columns);
+            String sql = mSQLBuilder.buildUpsertSQL(table.getClazz(), updateColumns);
+            if (!TextUtils.isEmpty(sql)) {
+                SQLiteStatement statement = null;
+                try {
+                    statement = db.compileStatement(sql);
+                    mSQLBuilder.bindInsertArgs(statement, table, object);
+                    count = statement.executeUpdateDelete();
+                } catch (SQLiteConstraintException e) {
+                    count = -1;
+                } catch (SQLException | IllegalStateException e) {
+                    count = 0;
+                } finally {
+                    if (statement != null) {
+                        statement.close();
+                        invalidate(db, table, object);
+                    }
+                }
+            }
+        }
+        if (count == -1) {
+            return insertOrUpdateByQuery(db, object, columns, result);
+        }
+
+        if (count > 0 && result != null) {
+            Object value = columns == null ? object : query(db, object);
+            if (value != null) {
+                result.setValue(value);
+            }
+        }
+        return count > 0;
     }
 
     /**
      * 往数据库中插入一行
      * A，如果不存在，与 insert 行为一致
      * B，如果存在，则丢弃
+     * SQLite 3.24 以上使用 ON CONFLICT(pk) DO NOTHING，只有主键冲突时丢弃，其他约束失败时返回 false；
+     * 更低的版本使用 INSERT OR IGNORE，非主键列的 NOT NULL、UNIQUE 约束失败时同样不写入且返回 true
      *
      * @param db DBDatabase 引擎
      * @param object 需要插入的对象
@@ -411,6 +1170,553 @@ public class TinyORM {
             return false;
         }
 
-        return exist(db, object) || insert(db, object) != -1;
+        SQLiteStatement statement = acquireStatement(db, table, StatementCache.INSERT_OR_IGNORE);
+        if (statement == null) {
+            return insertOrDiscardByQuery(db, object) != -1;
+        }
+        try {
+            execute(db, statement, table, object, StatementCache.INSERT_OR_IGNORE);
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 批量插入，在同一个事务中复用同一条编译好的语句
+     * 如果调用时已经在事务中，则加入当前事务
+     *
+     * @param db DBDatabase 引擎
+     * @param objects 需要插入的对象
+     * @return 与 objects 顺序一致的新行 id，出错的行为 －1
+     */
+    public long[] insertAll(SQLiteDatabase db, Iterable<?> objects) {
+        return executeAll(db, objects, StatementCache.INSERT);
+    }
+
+    /**
+     * 批量导入，导入期间不维护非唯一索引，导入后一次性创建，适合首次导入大量数据
+     * A，建表（已存在时保留），创建唯一索引，删除已有的非唯一索引
+     * B，同 {@link #insertAll(SQLiteDatabase, Iterable)} 插入所有对象
+     * C，按 {@link SQLBuilder#buildCreateIndexSQL(Class, String)} 创建非唯一索引，导入出错时也会执行
+     * 唯一索引参与 INSERT OR REPLACE 的冲突判断，不能延迟创建
+     *
+     * @param db DBDatabase 引擎
+     * @param clazz Bean 对应的 class，objects 中其他类型的对象同 insertAll 处理，不延迟其索引
+     * @param objects 需要插入的对象
+     * @param listener 每个阶段完成时回调耗时，可以为 null
+     * @return 与 objects 顺序一致的新行 id，出错的行为 －1，建表失败时返回空数组
+     */
+    public long[] bulkLoad(SQLiteDatabase db, Class<?> clazz, Iterable<?> objects,
+                           BulkLoadListener listener) {
+        Table table = mTableManager.getTable(clazz);
+        if (db == null || table == null || objects == null) {
+            return new long[0];
+        }
+        List<String> deferred = new ArrayList<>();
+        long begin = System.nanoTime();
+        boolean success = true;
+        try {
+            db.execSQL(mSQLBuilder.buildCreateTableSQL(clazz));
+            for (Table.Index index : table.getIndexes()) {
+                if (index.isUnique()) {
+                    db.execSQL(mSQLBuilder.buildCreateIndexSQL(clazz, index.getName()));
+                } else {
+                    db.execSQL(mSQLBuilder.buildDropIndexSQL(index.getName()));
+                    deferred.add(index.getName());
+                }
+            }
+        } catch (SQLException e) {
+            success = false;
+        }
+        begin = onPhaseFinished(listener, clazz, BulkLoadListener.PHASE_PREPARE, begin, success);
+        if (!success && deferred.isEmpty()) {
+            return new long[0];
+        }
+
+        long[] results = null;
+        try {
+            if (success) {
+                results = insertAll(db, objects);
+            }
+        } finally {
+            begin = onPhaseFinished(listener, clazz, BulkLoadListener.PHASE_LOAD, begin,
+                                    results != null);
+            success = true;
+            for (String indexName : deferred) {
+                try {
+                    db.execSQL(mSQLBuilder.buildCreateIndexSQL(clazz, indexName));
+                } catch (SQLException e) {
+                    success = false;
+                }
+            }
+            onPhaseFinished(listener, clazz, BulkLoadListener.PHASE_INDEX, begin, success);
+        }
+        return results != null ? results : new long[0];
+    }
+
+    /**
+     * 批量更新，在同一个事务中复用同一条编译好的语句
+     * 如果调用时已经在事务中，则加入当前事务
+     *
+     * @param db DBDatabase 引擎
+     * @param objects 需要更新的对象，按主键去匹配
+     * @return 与 objects 顺序一致的受影响行数，无法更新或出错的行为 －1，不影响其他行的提交
+     */
+    public long[] updateAll(SQLiteDatabase db, Iterable<?> objects) {
+        return executeAll(db, objects, StatementCache.UPDATE);
+    }
+
+    /**
+     * 批量删除，在同一个事务中复用同一条编译好的语句
+     * 如果调用时已经在事务中，则加入当前事务
+     *
+     * @param db DBDatabase 引擎
+     * @param objects 需要删除的对象，按主键去匹配
+     * @return 与 objects 顺序一致的受影响行数，无法删除或出错的行为 －1，不影响其他行的提交
+     */
+    public long[] deleteAll(SQLiteDatabase db, Iterable<?> objects) {
+        return executeAll(db, objects, StatementCache.DELETE);
+    }
+
+    /**
+     * 批量 insertOrUpdate，在同一个事务中复用同一条编译好的语句
+     * 如果调用时已经在事务中，则加入当前事务
+     *
+     * @param db DBDatabase 引擎
+     * @param objects 需要插入或更新的对象
+     * @return 与 objects 顺序一致的结果，1 为已写入，0 为未写入，出错的行为 －1
+     */
+    public long[] insertOrUpdateAll(SQLiteDatabase db, Iterable<?> objects) {
+        return executeAll(db, objects, StatementCache.UPSERT);
+    }
+
+    /**
+     * 批量 insertOrDiscard，在同一个事务中复用同一条编译好的语句
+     * 如果调用时已经在事务中，则加入当前事务
+     *
+     * @param db DBDatabase 引擎
+     * @param objects 需要插入的对象
+     * @return 与 objects 顺序一致的结果，1 为已插入，0 为已存在而丢弃，出错的行为 －1，
+     * 约束失败的处理同 {@link #insertOrDiscard(SQLiteDatabase, Object)}
+     */
+    public long[] insertOrDiscardAll(SQLiteDatabase db, Iterable<?> objects) {
+        return executeAll(db, objects, StatementCache.INSERT_OR_IGNORE);
+    }
+
+    /**
+     * 只更新指定的列，供 update 与 Session 的脏检查使用
+     */
+    int updateColumns(SQLiteDatabase db, Table table, Object object, List<Column> columns) {
+        String sql = mSQLBuilder.buildUpdateSQL(table.getClazz(), columns);
+        if (TextUtils.isEmpty(sql)) {
+            return 0;
+        }
+        SQLiteStatement statement = db.compileStatement(sql);
+        try {
+            mSQLBuilder.bindColumnArgs(statement, columns, object, 1);
+            mSQLBuilder.bindPrimaryKeyArgs(statement, table, object, columns.size() + 1);
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+            invalidate(db, table, object);
+        }
+    }
+
+    /**
+     * 转换并去重主键参数，跳过无效的主键
+     */
+    private List<Object[]> buildIdArgs(Table table, Collection<?> ids) {
+        Map<EntityKey, Object[]> args = new LinkedHashMap<>();
+        for (Object id : ids) {
+            Object[] values = mSQLBuilder.buildIdArgs(table.getClazz(), id);
+            EntityKey key = EntityKey.of(table, values);
+            if (key != null) {
+                args.put(key, values);
+            }
+        }
+        return new ArrayList<>(args.values());
+    }
+
+    private static Object[] toBindArgs(Object[] args) {
+        if (args == null) {
+            return null;
+        }
+        Object[] result = new Object[args.length];
+        for (int i = 0; i < args.length; i++) {
+            result[i] = SQLBuilder.toBindArg(args[i]);
+        }
+        return result;
+    }
+
+    private static Object[] flatten(List<Object[]> args, int start, int count) {
+        int width = args.get(start).length;
+        Object[] result = new Object[count * width];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(args.get(start + i), 0, result, i * width, width);
+        }
+        return result;
+    }
+
+    /**
+     * keys 中存在的行在 result 中对应位置置位，keys 中可以有 null
+     */
+    private void markExisting(SQLiteDatabase db, Table table, EntityKey[] keys, BitSet result) {
+        Map<EntityKey, Object[]> distinct = new LinkedHashMap<>();
+        for (EntityKey key : keys) {
+            if (key != null) {
+                distinct.put(key, key.getValues());
+            }
+        }
+        if (distinct.isEmpty()) {
+            return;
+        }
+        List<Object[]> args = new ArrayList<>(distinct.values());
+        Set<EntityKey> existing = new HashSet<>();
+        Class<?> clazz = table.getClazz();
+        int chunk = SQLBuilder.MAX_VARIABLES / table.getPrimaryKey().size();
+        for (int start = 0; start < args.size(); start += chunk) {
+            int count = Math.min(chunk, args.size() - start);
+            String sql = mSQLBuilder.buildExistByIdsSQL(clazz, count);
+            Object[] bindArgs = flatten(args, start, count);
+            Cursor cursor = db.rawQueryWithFactory(new BindArgsCursorFactory(bindArgs), sql,
+                                                   null, table.getName());
+            if (cursor == null) {
+                continue;
+            }
+            try {
+                while (cursor.moveToNext()) {
+                    existing.add(EntityKey.of(table, mSQLBuilder.readIdArgs(table, cursor)));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null && existing.contains(keys[i])) {
+                result.set(i);
+            }
+        }
+    }
+
+    /**
+     * 先查询是否存在，再 update 或 insert，用于不支持 UPSERT 的 SQLite 版本以及自增主键的表
+     */
+    private boolean insertOrUpdateByQuery(SQLiteDatabase db, Object object, String[] columns,
+                                          ResultValue<Object> result) {
+        if (exist(db, object)) {
+            return update(db, object, columns, result) > 0;
+        } else {
+            long rowId = insert(db, object);
+            if (rowId != -1 && result != null) {
+                result.setValue(object);
+            }
+            return rowId != -1;
+        }
+    }
+
+    /**
+     * 先查询是否存在，不存在时 insert，用于自增主键的表
+     *
+     * @return 1 为已插入，0 为已存在，－1 为出错
+     */
+    private long insertOrDiscardByQuery(SQLiteDatabase db, Object object) {
+        if (exist(db, object)) {
+            return 0;
+        }
+        return insert(db, object) != -1 ? 1 : -1;
+    }
+
+    private boolean supportsUpsert(SQLiteDatabase db) {
+        int version = mSQLiteVersion;
+        if (version == 0) {
+            version = querySQLiteVersion(db);
+            mSQLiteVersion = version;
+        }
+        return version >= UPSERT_MIN_VERSION;
+    }
+
+    /**
+     * "3.28.0" 转换为 3028000，出错时返回 －1
+     */
+    private int querySQLiteVersion(SQLiteDatabase db) {
+        try {
+            String version = DatabaseUtils.stringForQuery(db, SQLITE_VERSION_SQL, null);
+            String[] parts = version.split("\\.");
+            int value = 0;
+            for (int i = 0; i < 3; i++) {
+                value = value * 1000 + (i < parts.length ? Integer.parseInt(parts[i]) : 0);
+            }
+            return value;
+        } catch (SQLException | NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return 当前时间，作为下一阶段的开始时间
+     */
+    private static long onPhaseFinished(BulkLoadListener listener, Class<?> clazz, int phase,
+                                        long begin, boolean success) {
+        long now = System.nanoTime();
+        if (listener != null) {
+            listener.onPhaseFinished(clazz, phase, now - begin, success);
+        }
+        return now;
+    }
+
+    private long[] executeAll(SQLiteDatabase db, Iterable<?> objects, int type) {
+        if (db == null || objects == null) {
+            return new long[0];
+        }
+        int capacity = objects instanceof Collection ? ((Collection<?>) objects).size() : 16;
+        long[] results = new long[capacity];
+        int count = 0;
+
+        boolean transaction = !db.inTransaction();
+        if (transaction) {
+            db.beginTransaction();
+        }
+        try {
+            Class<?> clazz = null;
+            Table table = null;
+            SQLiteStatement statement = null;
+            for (Object object : objects) {
+                if (count == results.length) {
+                    results = Arrays.copyOf(results, count * 2 + 1);
+                }
+                long result = -1;
+                if (object != null) {
+                    if (object.getClass() != clazz) {
+                        clazz = object.getClass();
+                        table = mTableManager.getTable(clazz);
+                        statement = table != null ? acquireStatement(db, table, type) : null;
+                    }
+                    if (statement != null) {
+                        /**
+                         * 所有类型都只把出错的行记为 -1，不回滚同一批次中的其他行
+                         * UPSERT 约束失败时同 insertOrUpdate 退回到先查询再写入
+                         */
+                        try {
+                            result = execute(db, statement, table, object, type);
+                        } catch (SQLiteConstraintException e) {
+                            result = type == StatementCache.UPSERT
+                                    && insertOrUpdateByQuery(db, object, null, null) ? 1 : -1;
+                        } catch (SQLException e) {
+                            result = -1;
+                        }
+                    } else if (table != null && type == StatementCache.UPSERT) {
+                        result = insertOrUpdateByQuery(db, object, null, null) ? 1 : 0;
+                    } else if (table != null && type == StatementCache.INSERT_OR_IGNORE) {
+                        result = insertOrDiscardByQuery(db, object);
+                    }
+                }
+                results[count++] = result;
+            }
+            if (transaction) {
+                db.setTransactionSuccessful();
+            }
+        } finally {
+            if (transaction) {
+                db.endTransaction();
+            }
+            flushWrites(db);
+        }
+        return count == results.length ? results : Arrays.copyOf(results, count);
+    }
+
+    private long execute(SQLiteDatabase db, SQLiteStatement statement, Table table, Object object,
+                         int type) {
+        try {
+            return executeStatement(statement, table, object, type);
+        } catch (IllegalStateException e) {
+            /**
+             * 数据库已关闭，或语句已被 releaseStatements 关闭，丢弃缓存的语句并按执行失败处理
+             */
+            table.getStatementCache().release(db);
+            throw new SQLException("statement of " + table.getName() + " is closed", e);
+        } finally {
+            if (type != StatementCache.INSERT_OR_IGNORE && type != StatementCache.EXISTS) {
+                invalidate(db, table, object);
+            }
+        }
+    }
+
+    private long executeStatement(SQLiteStatement statement, Table table, Object object,
+                                  int type) {
+        synchronized (statement) {
+            try {
+                switch (type) {
+                    case StatementCache.INSERT:
+                        mSQLBuilder.bindInsertArgs(statement, table, object);
+                        return statement.executeInsert();
+                    case StatementCache.UPDATE:
+                        mSQLBuilder.bindUpdateArgs(statement, table, object);
+                        return statement.executeUpdateDelete();
+                    case StatementCache.DELETE:
+                        mSQLBuilder.bindPrimaryKeyArgs(statement, table, object, 1);
+                        return statement.executeUpdateDelete();
+                    case StatementCache.UPSERT:
+                    case StatementCache.INSERT_OR_IGNORE:
+                        mSQLBuilder.bindInsertArgs(statement, table, object);
+                        return statement.executeUpdateDelete();
+                    case StatementCache.EXISTS:
+                        mSQLBuilder.bindPrimaryKeyArgs(statement, table, object, 1);
+                        return statement.simpleQueryForLong();
+                    default:
+                        return -1;
+                }
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    /**
+     * 写操作后使实体缓存中对应的行失效，版本号的变化会阻止写操作之前开始的查询放入旧值
+     */
+    private void invalidate(SQLiteDatabase db, Table table, Object object) {
+        EntityCache cache = table.getEntityCache();
+        if (cache == null) {
+            return;
+        }
+        EntityKey key = EntityKey.of(table, mSQLBuilder.buildWhereArgs(object));
+        if (db.isOpen() && db.inTransaction()) {
+            beginWrite(db, cache, key);
+        } else {
+            cache.beginWrite(key);
+            cache.endWrite(key);
+            flushWrites(db);
+        }
+    }
+
+    /**
+     * 开始失效 key 对应的行，等到事务结束后由 {@link #flushWrites(SQLiteDatabase)} 结束
+     * TinyORM 自己开启的事务在 endTransaction 之后立即结束
+     */
+    private void beginWrite(SQLiteDatabase db, EntityCache cache, EntityKey key) {
+        cache.beginWrite(key);
+        List<PendingWrite> writes = mPendingWrites.get();
+        if (writes == null) {
+            writes = new ArrayList<>();
+            mPendingWrites.set(writes);
+        }
+        writes.add(new PendingWrite(db, cache, key));
+    }
+
+    /**
+     * 结束当前线程中所在事务已经结束的写操作，db 仍在事务中时不做处理
+     * 事务由调用方开启时，在事务结束后本线程的下一次读写中结束，在此之前只有写过的行不会放入缓存
+     */
+    void flushWrites(SQLiteDatabase db) {
+        List<PendingWrite> writes = mPendingWrites.get();
+        if (writes == null || (db.isOpen() && db.inTransaction())) {
+            return;
+        }
+        for (int i = writes.size() - 1; i >= 0; i--) {
+            PendingWrite write = writes.get(i);
+            SQLiteDatabase database = write.mDatabase.get();
+            if (database != null && database.isOpen() && database.inTransaction()) {
+                continue;
+            }
+            EntityCache cache = write.mCache.get();
+            if (cache != null) {
+                cache.endWrite(write.mKey);
+            }
+            writes.remove(i);
+        }
+        if (writes.isEmpty()) {
+            mPendingWrites.remove();
+        }
+    }
+
+    private Map<String, String> queryFingerprints(SQLiteDatabase db) {
+        Map<String, String> fingerprints = new HashMap<>();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(mSQLBuilder.buildQueryFingerprintsSQL(), null);
+            while (cursor != null && cursor.moveToNext()) {
+                fingerprints.put(cursor.getString(0), cursor.getString(1));
+            }
+        } catch (SQLException e) {
+            /**
+             * tiny_orm_schema 尚未创建，全部视为变化
+             */
+            fingerprints.clear();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return fingerprints;
+    }
+
+    private void deleteFingerprint(SQLiteDatabase db, Table table) {
+        if (table == null) {
+            return;
+        }
+        try {
+            db.execSQL(mSQLBuilder.buildDeleteFingerprintSQL(), new Object[] {table.getName()});
+        } catch (SQLException ignored) {}
+    }
+
+    private SQLiteStatement acquireStatement(SQLiteDatabase db, Table table, int type) {
+        StatementCache cache = table.getStatementCache();
+        SQLiteStatement statement = cache.get(db, type);
+        if (statement != null) {
+            return statement;
+        }
+
+        if (type == StatementCache.UPSERT && !supportsUpsert(db)) {
+            return null;
+        }
+        String sql;
+        if (type == StatementCache.INSERT_OR_IGNORE && supportsUpsert(db)) {
+            /**
+             * OR IGNORE 会忽略所有约束失败，支持时改为只忽略主键冲突
+             */
+            sql = mSQLBuilder.buildInsertOrNothingSQL(table.getClazz());
+        } else {
+            sql = mSQLBuilder.buildStatementSQL(table.getClazz(), type);
+        }
+        if (TextUtils.isEmpty(sql)) {
+            return null;
+        }
+        purgeStatements(db);
+        try {
+            return cache.put(db, type, db.compileStatement(sql));
+        } catch (SQLException | IllegalStateException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 第一次在 db 上编译语句时，释放所有表中已关闭数据库的语句，
+     * 避免不再访问的表一直持有关闭的数据库
+     */
+    private void purgeStatements(SQLiteDatabase db) {
+        synchronized (mDatabases) {
+            if (mDatabases.put(db, Boolean.TRUE) != null) {
+                return;
+            }
+        }
+        for (Table table : mTableManager.getTables()) {
+            table.getStatementCache().purge();
+        }
+    }
+
+    /**
+     * 只弱引用数据库与缓存，线程不再调用 TinyORM 时不会让它们无法回收
+     */
+    private static class PendingWrite {
+        private final WeakReference<SQLiteDatabase> mDatabase;
+        private final WeakReference<EntityCache> mCache;
+        private final EntityKey mKey;
+
+        PendingWrite(SQLiteDatabase db, EntityCache cache, EntityKey key) {
+            mDatabase = new WeakReference<>(db);
+            mCache = new WeakReference<>(cache);
+            mKey = key;
+        }
     }
 }
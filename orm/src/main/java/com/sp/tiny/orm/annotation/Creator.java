@@ -0,0 +1,20 @@
+package com.sp.tiny.orm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * author: 后知后觉(307817387/myz7656)
+ * email: whuzhanyuanmin@126.com
+ */
+
+/**
+ * 标记加载时使用的构造函数，每个参数需要用 @Property 指明对应的列名，
+ * 没有作为参数的列在构造之后按字段赋值，可以用于 final 字段的不可变 Bean。
+ */
+@Target(ElementType.CONSTRUCTOR)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Creator {
+}
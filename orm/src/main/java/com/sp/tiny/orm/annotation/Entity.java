@@ -22,4 +22,9 @@ public @interface Entity {
      * Indexes for the entity.
      */
     Index[] indexes() default {};
+
+    /**
+     * Max entities kept in the process-wide cache, 0 disables it.
+     */
+    int cacheSize() default 0;
 }
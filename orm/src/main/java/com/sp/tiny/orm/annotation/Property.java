@@ -10,7 +10,7 @@ import java.lang.annotation.Target;
  * email: whuzhanyuanmin@126.com
  */
 
-@Target(ElementType.FIELD)
+@Target({ElementType.FIELD, ElementType.PARAMETER})
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Property {
 
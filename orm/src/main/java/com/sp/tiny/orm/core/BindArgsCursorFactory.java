@@ -0,0 +1,31 @@
+package com.sp.tiny.orm.core;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQuery;
+
+/**
+ * author: 后知后觉(307817387/myz7656)
+ * email: whuzhanyuanmin@126.com
+ */
+
+/**
+ * 按类型绑定查询参数，selectionArgs 只能按字符串绑定，BLOB 等类型无法匹配。
+ * 配合 rawQueryWithFactory 使用，selectionArgs 传 null。
+ */
+public class BindArgsCursorFactory implements SQLiteDatabase.CursorFactory {
+    private final Object[] mArgs;
+
+    public BindArgsCursorFactory(Object[] args) {
+        mArgs = args;
+    }
+
+    @Override
+    public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable,
+                            SQLiteQuery query) {
+        SQLBuilder.bindArgs(query, mArgs, 1);
+        return new SQLiteCursor(masterQuery, editTable, query);
+    }
+}
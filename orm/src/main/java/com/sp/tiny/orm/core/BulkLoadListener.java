@@ -0,0 +1,36 @@
+package com.sp.tiny.orm.core;
+
+/**
+ * author: 后知后觉(307817387/myz7656)
+ * email: whuzhanyuanmin@126.com
+ */
+
+/**
+ * 批量导入各阶段的耗时回调，在调用 bulkLoad 的线程中调用
+ */
+public interface BulkLoadListener {
+    /**
+     * 建表、创建唯一索引、删除非唯一索引
+     */
+    int PHASE_PREPARE = 0;
+
+    /**
+     * 在同一个事务中插入所有对象
+     */
+    int PHASE_LOAD = 1;
+
+    /**
+     * 一次性创建导入期间延迟的非唯一索引
+     */
+    int PHASE_INDEX = 2;
+
+    /**
+     * 某个阶段完成
+     *
+     * @param clazz Bean 对应的 class
+     * @param phase PHASE_PREPARE、PHASE_LOAD 或者 PHASE_INDEX
+     * @param costNanos 耗时，单位纳秒
+     * @param success 执行 SQL 出错时为 false
+     */
+    void onPhaseFinished(Class<?> clazz, int phase, long costNanos, boolean success);
+}
@@ -1,6 +1,10 @@
 package com.sp.tiny.orm.core;
 
+import android.database.Cursor;
+import android.database.sqlite.SQLiteProgram;
+
 import java.lang.reflect.Field;
+import java.util.Date;
 
 /**
  * author: 后知后觉(307817387/myz7656)
@@ -11,6 +15,7 @@ public class Column {
     private String mName;
     private Field mField;
     private int mClassType;
+    private boolean mPrimitive;
 
     private Id mId;
     private boolean mCanBeNull;
@@ -24,6 +29,7 @@ public class Column {
         mName = name;
         mField = field;
         mClassType = classType;
+        mPrimitive = field != null && field.getType().isPrimitive();
 
         mId = null;
         mCanBeNull = true;
@@ -44,6 +50,7 @@ public class Column {
 
     public void setField(Field field) {
         mField = field;
+        mPrimitive = field != null && field.getType().isPrimitive();
     }
 
     public int getClassType() {
@@ -78,6 +85,144 @@ public class Column {
         mIsUnique = unique;
     }
 
+    /**
+     * 字段是否为基本类型，基本类型通过 Field.getInt/setInt 等读写，不产生装箱对象
+     */
+    public boolean isPrimitive() {
+        return mPrimitive;
+    }
+
+    /**
+     * 把 object 中这一列的值绑定到 program 的 index 位置，值为 null 时绑定 NULL
+     */
+    public void bind(SQLiteProgram program, int index, Object object)
+            throws IllegalAccessException {
+        if (mPrimitive) {
+            switch (mClassType) {
+                case DataType.CLASS_TYPE_BOOLEAN:
+                    program.bindLong(index, mField.getBoolean(object) ? 1 : 0);
+                    return;
+                case DataType.CLASS_TYPE_DOUBLE:
+                    program.bindDouble(index, mField.getDouble(object));
+                    return;
+                case DataType.CLASS_TYPE_FLOAT:
+                    program.bindDouble(index, mField.getFloat(object));
+                    return;
+                case DataType.CLASS_TYPE_LONG:
+                    program.bindLong(index, mField.getLong(object));
+                    return;
+                case DataType.CLASS_TYPE_INT:
+                    program.bindLong(index, mField.getInt(object));
+                    return;
+                case DataType.CLASS_TYPE_SHORT:
+                    program.bindLong(index, mField.getShort(object));
+                    return;
+                case DataType.CLASS_TYPE_BYTE:
+                    program.bindLong(index, mField.getByte(object));
+                    return;
+                case DataType.CLASS_TYPE_CHAR:
+                    program.bindString(index, String.valueOf(mField.getChar(object)));
+                    return;
+            }
+        }
+        Object value = mField.get(object);
+        if (value == null) {
+            program.bindNull(index);
+            return;
+        }
+        switch (mClassType) {
+            case DataType.CLASS_TYPE_STRING:
+            case DataType.CLASS_TYPE_CHAR:
+                program.bindString(index, value.toString());
+                break;
+            case DataType.CLASS_TYPE_BOOLEAN:
+                program.bindLong(index, (Boolean) value ? 1 : 0);
+                break;
+            case DataType.CLASS_TYPE_DOUBLE:
+            case DataType.CLASS_TYPE_FLOAT:
+                program.bindDouble(index, ((Number) value).doubleValue());
+                break;
+            case DataType.CLASS_TYPE_LONG:
+            case DataType.CLASS_TYPE_INT:
+            case DataType.CLASS_TYPE_SHORT:
+            case DataType.CLASS_TYPE_BYTE:
+                program.bindLong(index, ((Number) value).longValue());
+                break;
+            case DataType.CLASS_TYPE_DATE:
+                program.bindLong(index, ((Date) value).getTime());
+                break;
+            case DataType.CLASS_TYPE_BYTE_ARRAY:
+                program.bindBlob(index, (byte[]) value);
+                break;
+            default:
+                program.bindNull(index);
+                break;
+        }
+    }
+
+    /**
+     * 把 cursor 中 index 位置的值写入 object 的这一列，调用前需要确认值不为 NULL
+     */
+    public void read(Cursor cursor, int index, Object object) throws IllegalAccessException {
+        if (mPrimitive) {
+            switch (mClassType) {
+                case DataType.CLASS_TYPE_BOOLEAN:
+                    mField.setBoolean(object, cursor.getInt(index) != 0);
+                    return;
+                case DataType.CLASS_TYPE_DOUBLE:
+                    mField.setDouble(object, cursor.getDouble(index));
+                    return;
+                case DataType.CLASS_TYPE_FLOAT:
+                    mField.setFloat(object, cursor.getFloat(index));
+                    return;
+                case DataType.CLASS_TYPE_LONG:
+                    mField.setLong(object, cursor.getLong(index));
+                    return;
+                case DataType.CLASS_TYPE_INT:
+                    mField.setInt(object, cursor.getInt(index));
+                    return;
+                case DataType.CLASS_TYPE_SHORT:
+                    mField.setShort(object, cursor.getShort(index));
+                    return;
+                case DataType.CLASS_TYPE_BYTE:
+                    mField.setByte(object, (byte) cursor.getShort(index));
+                    return;
+            }
+        }
+        Object value = SQLBuilder.readValue(cursor, index, mClassType);
+        if (value != null) {
+            mField.set(object, value);
+        } else {
+            /**
+             * 空字符串读不出 char，重置这一列，避免 readInto 复用对象时留下上一行的值
+             */
+            reset(object);
+        }
+    }
+
+    /**
+     * 把 object 的这一列重置为 null，基本类型重置为 0 或者 false
+     */
+    public void reset(Object object) throws IllegalAccessException {
+        if (!mPrimitive) {
+            mField.set(object, null);
+            return;
+        }
+        Class<?> type = mField.getType();
+        if (type == boolean.class) {
+            mField.setBoolean(object, false);
+        } else if (type == char.class) {
+            mField.setChar(object, '\0');
+        } else if (type == double.class || type == float.class) {
+            mField.setFloat(object, 0);
+        } else {
+            /**
+             * setByte 会按基本类型放宽到 short、int、long
+             */
+            mField.setByte(object, (byte) 0);
+        }
+    }
+
     public static class Id {
         boolean mAutoIncrement;
         public Id() {
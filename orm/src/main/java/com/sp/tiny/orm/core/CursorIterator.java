@@ -0,0 +1,86 @@
+package com.sp.tiny.orm.core;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * author: 后知后觉(307817387/myz7656)
+ * email: whuzhanyuanmin@126.com
+ */
+
+/**
+ * 在 Cursor 上逐行加载对象，不会一次性生成 List。
+ * 只能遍历一次，遍历结束时自动关闭 Cursor，提前结束时需要调用 {@link #close()}。
+ */
+public class CursorIterator<T> implements Iterator<T>, Iterable<T>, Closeable {
+    private final Cursor mCursor;
+    private final RowMapper<T> mMapper;
+    private final T mTarget;
+    private boolean mPrepared;
+    private boolean mHasNext;
+    private boolean mClosed;
+
+    public CursorIterator(@NonNull Cursor cursor, @NonNull RowMapper<T> mapper) {
+        this(cursor, mapper, null);
+    }
+
+    /**
+     * @param target 不为 null 时每一行都写入这个对象并返回它，遍历过程中不再创建对象
+     */
+    public CursorIterator(@NonNull Cursor cursor, @NonNull RowMapper<T> mapper, T target) {
+        mCursor = cursor;
+        mMapper = mapper;
+        mTarget = target;
+    }
+
+    @NonNull
+    @Override
+    public Iterator<T> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (mClosed) {
+            return false;
+        }
+        if (!mPrepared) {
+            mHasNext = mCursor.moveToNext();
+            mPrepared = true;
+            if (!mHasNext) {
+                close();
+            }
+        }
+        return mHasNext;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        mPrepared = false;
+        if (mTarget != null) {
+            mMapper.mapInto(mCursor, mTarget);
+            return mTarget;
+        }
+        return mMapper.map(mCursor);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        if (!mClosed) {
+            mClosed = true;
+            mCursor.close();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.sp.tiny.orm.core;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * author: 后知后觉(307817387/myz7656)
+ * email: whuzhanyuanmin@126.com
+ */
+
+/**
+ * 进程级的实体缓存，每个 Table 一个，按主键做 LRU 淘汰，位于 query(db, object) 之前
+ * 缓存只保存自己的副本，放入与取出时由 TinyORM 复制，调用方修改返回的对象不会影响缓存，
+ * 不可变的实体（见 {@link EntityCreator#isImmutable()}）直接共享。
+ * 写操作通过 {@link #beginWrite(EntityKey)} 与 {@link #endWrite(EntityKey)} 包围整个事务，
+ * 期间拒绝放入被写的行，避免其他连接读到的旧值或者回滚前读到的未提交数据进入缓存，其他行不受影响。
+ * 绕过 TinyORM 修改数据库后需要调用 {@link #clear()}。
+ */
+public class EntityCache {
+    private final LinkedHashMap<EntityKey, Entry> mEntries;
+    private int mMaxSize;
+    private long mVersion;
+    private final HashMap<EntityKey, Integer> mPendingKeys;
+    private int mPendingClears;
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    public EntityCache(int maxSize) {
+        mMaxSize = maxSize;
+        mPendingKeys = new HashMap<>();
+        mEntries = new LinkedHashMap<EntityKey, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<EntityKey, Entry> eldest) {
+                if (size() > mMaxSize) {
+                    mEvictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return 缓存中的对象，不存在或者属于其他数据库时返回 null
+     */
+    public synchronized Object get(SQLiteDatabase db, EntityKey key) {
+        Entry entry = mEntries.get(key);
+        if (entry != null && entry.mDatabase == db) {
+            mHitCount++;
+            return entry.mValue;
+        }
+        mMissCount++;
+        return null;
+    }
+
+    /**
+     * 当前版本，每次失效都会增加，查询前获取，放入时用于判断期间是否有写操作
+     */
+    public synchronized long version() {
+        return mVersion;
+    }
+
+    /**
+     * 放入缓存，如果 version 之后有过写操作，或者这一行还有未结束的写操作则放弃，避免缓存旧值
+     */
+    public synchronized void put(SQLiteDatabase db, EntityKey key, Object value, long version) {
+        if (version != mVersion || value == null || mPendingClears > 0
+                || mPendingKeys.containsKey(key)) {
+            return;
+        }
+        mEntries.put(key, new Entry(db, value));
+    }
+
+    /**
+     * 写操作开始，使对应的行失效，直到 {@link #endWrite(EntityKey)} 之前拒绝放入这一行
+     *
+     * @param key 写入的行，为 null 时清空缓存，并在结束前拒绝放入所有行
+     */
+    public synchronized void beginWrite(EntityKey key) {
+        if (key == null) {
+            mPendingClears++;
+        } else {
+            Integer count = mPendingKeys.get(key);
+            mPendingKeys.put(key, count == null ? 1 : count + 1);
+        }
+        invalidate(key);
+    }
+
+    /**
+     * 写操作所在的事务提交或者回滚之后调用，再次失效，丢弃写操作期间读到的旧值
+     *
+     * @param key 与 {@link #beginWrite(EntityKey)} 相同
+     */
+    public synchronized void endWrite(EntityKey key) {
+        invalidate(key);
+        if (key == null) {
+            if (mPendingClears > 0) {
+                mPendingClears--;
+            }
+            return;
+        }
+        Integer count = mPendingKeys.get(key);
+        if (count == null || count <= 1) {
+            mPendingKeys.remove(key);
+        } else {
+            mPendingKeys.put(key, count - 1);
+        }
+    }
+
+    public synchronized void remove(EntityKey key) {
+        mVersion++;
+        mEntries.remove(key);
+    }
+
+    private void invalidate(EntityKey key) {
+        mVersion++;
+        if (key != null) {
+            mEntries.remove(key);
+        } else {
+            mEntries.clear();
+        }
+    }
+
+    public synchronized void clear() {
+        mVersion++;
+        mEntries.clear();
+    }
+
+    public synchronized void resize(int maxSize) {
+        mMaxSize = maxSize;
+        while (mEntries.size() > maxSize) {
+            EntityKey eldest = mEntries.keySet().iterator().next();
+            mEntries.remove(eldest);
+            mEvictionCount++;
+        }
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized int maxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized long hitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long missCount() {
+        return mMissCount;
+    }
+
+    public synchronized long evictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "EntityCache[size=" + mEntries.size() + ",maxSize=" + mMaxSize
+                + ",hits=" + mHitCount + ",misses=" + mMissCount
+                + ",evictions=" + mEvictionCount + "]";
+    }
+
+    private static class Entry {
+        private final SQLiteDatabase mDatabase;
+        private final Object mValue;
+
+        Entry(SQLiteDatabase db, Object value) {
+            mDatabase = db;
+            mValue = value;
+        }
+    }
+}
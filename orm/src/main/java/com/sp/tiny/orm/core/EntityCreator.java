@@ -0,0 +1,252 @@
+package com.sp.tiny.orm.core;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import com.sp.tiny.orm.annotation.Creator;
+import com.sp.tiny.orm.annotation.Property;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.Date;
+
+/**
+ * author: 后知后觉(307817387/myz7656)
+ * email: whuzhanyuanmin@126.com
+ */
+
+/**
+ * 反射加载时创建对象的方式，每个 Table 解析一次：
+ * A，有 @Creator 构造函数时，参数按 @Property 的列名从 Cursor 中读取，一次调用完成构造
+ * B，否则使用无参构造函数（可以不是 public），之后逐列赋值
+ */
+public class EntityCreator {
+    private final Constructor<?> mConstructor;
+    private final Column[] mColumns;
+    private final int[] mParameters;
+    private final Object[] mDefaults;
+    private final int[] mFields;
+    private final boolean mImmutable;
+
+    private EntityCreator(Constructor<?> constructor, Column[] columns, int[] parameters) {
+        mConstructor = constructor;
+        mColumns = columns;
+        mParameters = parameters;
+        Class<?>[] types = constructor.getParameterTypes();
+        mDefaults = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            mDefaults[i] = defaultValue(types[i]);
+        }
+        boolean[] used = new boolean[columns.length];
+        int count = columns.length;
+        for (int position : parameters) {
+            if (!used[position]) {
+                used[position] = true;
+                count--;
+            }
+        }
+        mFields = new int[count];
+        int index = 0;
+        for (int i = 0; i < columns.length; i++) {
+            if (!used[i]) {
+                mFields[index++] = i;
+            }
+        }
+        mImmutable = isImmutable(columns);
+    }
+
+    /**
+     * 解析 table 的创建方式，需要在列顺序确定之后调用
+     *
+     * @return 没有 @Creator 并且没有无参构造函数时返回 null
+     * @throws IllegalArgumentException @Creator 没有参数，或者参数无法全部对应到 @Property 列，
+     * 避免静默改用无参构造函数
+     */
+    public static EntityCreator create(@NonNull Table table) {
+        Class<?> clazz = table.getClazz();
+        if (Modifier.isAbstract(clazz.getModifiers())) {
+            return null;
+        }
+        Column[] columns = table.getColumnArray();
+        boolean annotated = false;
+        for (Constructor<?> constructor : clazz.getDeclaredConstructors()) {
+            if (constructor.getAnnotation(Creator.class) == null) {
+                continue;
+            }
+            annotated = true;
+            if (constructor.getParameterTypes().length == 0) {
+                throw new IllegalArgumentException("@Creator of " + clazz.getName()
+                        + " has no parameters, remove it to use the no-arg constructor");
+            }
+            int[] parameters = resolveParameters(table, constructor);
+            if (parameters != null) {
+                constructor.setAccessible(true);
+                return new EntityCreator(constructor, columns, parameters);
+            }
+        }
+        if (annotated) {
+            throw new IllegalArgumentException("@Creator of " + clazz.getName()
+                    + " has a parameter without a matching @Property column");
+        }
+        try {
+            Constructor<?> constructor = clazz.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return new EntityCreator(constructor, columns, new int[0]);
+        } catch (NoSuchMethodException | SecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 是否通过 @Creator 构造函数创建
+     */
+    public boolean hasCreator() {
+        return mParameters.length > 0;
+    }
+
+    /**
+     * 所有列都是 final 字段，并且没有 byte[]、Date 这类内容可变的值，此时对象可以直接共享，不需要 copy
+     * 通常是只通过 @Creator 构造的实体
+     */
+    public boolean isImmutable() {
+        return mImmutable;
+    }
+
+    /**
+     * 加载 Cursor 当前行，列不存在或者值为 NULL 时，参数取类型的默认值，字段保留对象的默认值
+     *
+     * @param indexes 每一列在 Cursor 中的位置，与 {@link Table#getColumnArray()} 顺序一致，-1 表示不存在
+     * @return 新对象，如果加载失败返回 null
+     */
+    public Object newInstance(@NonNull Cursor cursor, @NonNull int[] indexes) {
+        try {
+            Object object;
+            if (mParameters.length == 0) {
+                object = mConstructor.newInstance();
+            } else {
+                Object[] args = new Object[mParameters.length];
+                for (int i = 0; i < args.length; i++) {
+                    int position = mParameters[i];
+                    int index = indexes[position];
+                    Object value = null;
+                    if (index != -1 && !cursor.isNull(index)) {
+                        int classType = mColumns[position].getClassType();
+                        value = SQLBuilder.readValue(cursor, index, classType);
+                    }
+                    args[i] = value != null ? value : mDefaults[i];
+                }
+                object = mConstructor.newInstance(args);
+            }
+            for (int position : mFields) {
+                int index = indexes[position];
+                if (index != -1 && !cursor.isNull(index)) {
+                    mColumns[position].read(cursor, index, object);
+                }
+            }
+            return object;
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException
+                | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 复制对象的所有列，byte[] 与 Date 也会复制，供实体缓存与调用方之间不共享同一个实例
+     *
+     * @return 新对象，如果复制失败返回 null
+     */
+    public Object copy(@NonNull Object source) {
+        try {
+            Object object;
+            if (mParameters.length == 0) {
+                object = mConstructor.newInstance();
+            } else {
+                Object[] args = new Object[mParameters.length];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = copyValue(mColumns[mParameters[i]].getField().get(source));
+                }
+                object = mConstructor.newInstance(args);
+            }
+            for (int position : mFields) {
+                Field field = mColumns[position].getField();
+                field.set(object, copyValue(field.get(source)));
+            }
+            return object;
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException
+                | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static int[] resolveParameters(Table table, Constructor<?> constructor) {
+        Class<?>[] types = constructor.getParameterTypes();
+        Annotation[][] annotations = constructor.getParameterAnnotations();
+        int[] parameters = new int[types.length];
+        for (int i = 0; i < types.length; i++) {
+            Property property = null;
+            for (Annotation annotation : annotations[i]) {
+                if (annotation instanceof Property) {
+                    property = (Property) annotation;
+                }
+            }
+            if (property == null) {
+                return null;
+            }
+            int position = table.getColumnIndex(property.name());
+            if (position == -1
+                    || table.getColumnArray()[position].getField().getType() != types[i]) {
+                return null;
+            }
+            parameters[i] = position;
+        }
+        return parameters;
+    }
+
+    private static boolean isImmutable(Column[] columns) {
+        for (Column column : columns) {
+            Field field = column.getField();
+            Class<?> type = field.getType();
+            if (!Modifier.isFinal(field.getModifiers()) || type.isArray()
+                    || Date.class.isAssignableFrom(type)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Object copyValue(Object value) {
+        if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        }
+        if (value instanceof Date) {
+            return new Date(((Date) value).getTime());
+        }
+        return value;
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        } else if (type == char.class) {
+            return '\0';
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0f;
+        } else {
+            return 0d;
+        }
+    }
+}
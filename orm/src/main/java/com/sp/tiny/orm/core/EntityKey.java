@@ -0,0 +1,80 @@
+package com.sp.tiny.orm.core;
+
+import java.util.Arrays;
+
+/**
+ * author: 后知后觉(307817387/myz7656)
+ * email: whuzhanyuanmin@126.com
+ */
+
+/**
+ * 行的唯一标识：(Table, 主键值)，用作 identity map 与缓存的键
+ * 整数类型统一为 Long，浮点类型统一为 Double，byte[] 按内容比较
+ */
+public final class EntityKey {
+    private final Table mTable;
+    private final Object[] mValues;
+    private final int mHash;
+
+    private EntityKey(Table table, Object[] values) {
+        mTable = table;
+        mValues = values;
+        mHash = 31 * System.identityHashCode(table) + Arrays.deepHashCode(values);
+    }
+
+    /**
+     * @param table 表
+     * @param values 主键值，与 Table.getPrimaryKey() 顺序一致
+     * @return 主键为空或者任一主键值为 null 时返回 null
+     */
+    public static EntityKey of(Table table, Object[] values) {
+        if (table == null || values == null || values.length == 0) {
+            return null;
+        }
+        Object[] normalized = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value == null) {
+                return null;
+            }
+            if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                value = ((Number) value).longValue();
+            } else if (value instanceof Float) {
+                value = ((Float) value).doubleValue();
+            }
+            normalized[i] = value;
+        }
+        return new EntityKey(table, normalized);
+    }
+
+    public Table getTable() {
+        return mTable;
+    }
+
+    public Object[] getValues() {
+        return mValues;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EntityKey)) {
+            return false;
+        }
+        EntityKey other = (EntityKey) o;
+        return mTable == other.mTable && mHash == other.mHash
+                && Arrays.deepEquals(mValues, other.mValues);
+    }
+
+    @Override
+    public int hashCode() {
+        return mHash;
+    }
+
+    @Override
+    public String toString() {
+        return mTable.getName() + Arrays.deepToString(mValues);
+    }
+}
@@ -0,0 +1,40 @@
+package com.sp.tiny.orm.core;
+
+import android.support.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * author: 后知后觉(307817387/myz7656)
+ * email: whuzhanyuanmin@126.com
+ */
+
+/**
+ * 键集分页的一页结果，通过 {@link #getNextToken()} 获取下一页
+ */
+public class Page<T> {
+    private final List<T> mItems;
+    private final String mNextToken;
+
+    public Page(@NonNull List<T> items, String nextToken) {
+        mItems = items;
+        mNextToken = nextToken;
+    }
+
+    public List<T> getItems() {
+        return mItems;
+    }
+
+    /**
+     * 下一页的令牌，内容不透明，只能传回给同一个 Bean 与排序列的分页查询
+     *
+     * @return 没有下一页时返回 null
+     */
+    public String getNextToken() {
+        return mNextToken;
+    }
+
+    public boolean hasNext() {
+        return mNextToken != null;
+    }
+}
@@ -0,0 +1,49 @@
+package com.sp.tiny.orm.core;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteProgram;
+
+/**
+ * author: 后知后觉(307817387/myz7656)
+ * email: whuzhanyuanmin@126.com
+ */
+
+/**
+ * 编译期由 orm-compiler 为每个 @Entity 生成的行适配器，命名为 "实体类名_RowAdapter"，
+ * 用于替代运行时反射完成绑定与加载。
+ *
+ * 绑定顺序与 {@link #getColumnNames()} 一致:
+ * A，insert 绑定所有非自增主键列
+ * B，update 先绑定所有非主键列，再绑定主键列
+ */
+public interface RowAdapter<T> {
+    /**
+     * 列名，与反射解析的顺序一致：从子类到父类，每个类中按字段名排序，顺序不一致时不会使用
+     */
+    String[] getColumnNames();
+
+    void bindInsert(SQLiteProgram program, T object);
+
+    void bindUpdate(SQLiteProgram program, T object);
+
+    /**
+     * 从 offset 开始（从 1 计数）绑定主键列
+     */
+    void bindPrimaryKey(SQLiteProgram program, T object, int offset);
+
+    Object[] getPrimaryKey(T object);
+
+    /**
+     * 加载 Cursor 当前行
+     *
+     * @param indexes 每一列在 Cursor 中的位置，与 {@link #getColumnNames()} 顺序一致，-1 表示不存在
+     */
+    T readCursor(Cursor cursor, int[] indexes);
+
+    /**
+     * 把 Cursor 当前行写入已有对象，值为 NULL 的列重置为 null 或者 0，不存在的列保持不变
+     *
+     * @param indexes 同 {@link #readCursor(Cursor, int[])}
+     */
+    void readInto(Cursor cursor, int[] indexes, T object);
+}
@@ -0,0 +1,99 @@
+package com.sp.tiny.orm.core;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+/**
+ * author: 后知后觉(307817387/myz7656)
+ * email: whuzhanyuanmin@126.com
+ */
+
+/**
+ * 把 Cursor 的行加载为对象，列位置在第一次遇到某个 Cursor 时解析一次，之后每行只按位置读取。
+ * 不是线程安全的，每个线程/Cursor 使用自己的实例。
+ */
+public class RowMapper<T> {
+    private final Table mTable;
+    private final Column[] mColumns;
+    private final int[] mIndexes;
+    private Cursor mCursor;
+
+    public RowMapper(@NonNull Table table) {
+        mTable = table;
+        mColumns = table.getColumnArray();
+        mIndexes = new int[mColumns.length];
+    }
+
+    public Table getTable() {
+        return mTable;
+    }
+
+    /**
+     * 加载 Cursor 当前行，列不存在或者值为 NULL 时保留对象的默认值
+     *
+     * @param cursor 数据库游标，需要已经移动到某一行
+     * @return 新对象，如果加载失败返回 null
+     */
+    @SuppressWarnings("unchecked")
+    public T map(@NonNull Cursor cursor) {
+        if (cursor != mCursor) {
+            resolve(cursor);
+        }
+
+        RowAdapter<Object> adapter = mTable.getAdapter();
+        if (adapter != null) {
+            return (T) adapter.readCursor(cursor, mIndexes);
+        }
+
+        EntityCreator creator = mTable.getCreator();
+        if (creator == null) {
+            return null;
+        }
+        return (T) creator.newInstance(cursor, mIndexes);
+    }
+
+    /**
+     * 把 Cursor 当前行写入已有对象，用于遍历时复用同一个对象
+     * 值为 NULL 的列重置为 null 或者 0，Cursor 中不存在的列保持不变
+     *
+     * @param cursor 数据库游标，需要已经移动到某一行
+     * @param target 被覆盖的对象
+     * @return 是否加载成功
+     */
+    @SuppressWarnings("unchecked")
+    public boolean mapInto(@NonNull Cursor cursor, @NonNull T target) {
+        if (cursor != mCursor) {
+            resolve(cursor);
+        }
+
+        RowAdapter<Object> adapter = mTable.getAdapter();
+        if (adapter != null) {
+            adapter.readInto(cursor, mIndexes, target);
+            return true;
+        }
+
+        try {
+            for (int i = 0; i < mColumns.length; i++) {
+                int index = mIndexes[i];
+                if (index == -1) {
+                    continue;
+                }
+                if (cursor.isNull(index)) {
+                    mColumns[i].reset(target);
+                } else {
+                    mColumns[i].read(cursor, index, target);
+                }
+            }
+        } catch (IllegalAccessException e) {
+            return false;
+        }
+        return true;
+    }
+
+    private void resolve(Cursor cursor) {
+        for (int i = 0; i < mColumns.length; i++) {
+            mIndexes[i] = cursor.getColumnIndex(mColumns[i].getName());
+        }
+        mCursor = cursor;
+    }
+}
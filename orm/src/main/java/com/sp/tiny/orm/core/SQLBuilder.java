@@ -2,12 +2,22 @@ package com.sp.tiny.orm.core;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteProgram;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
+import android.util.Base64;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
@@ -22,6 +32,17 @@ public class SQLBuilder {
     public static final String TABLE = "TABLE ";
     public static final String TABLE_IF_NOT_EXISTS = "TABLE IF NOT EXISTS ";
     public static final String INDEX_IF_NOT_EXISTS = "INDEX IF NOT EXISTS ";
+    public static final String INDEX_IF_EXISTS = "INDEX IF EXISTS ";
+    public static final String TABLE_IF_EXISTS = "TABLE IF EXISTS ";
+    public static final String ALTER_TABLE = "ALTER TABLE ";
+    public static final String ADD_COLUMN = " ADD COLUMN ";
+    public static final String RENAME_TO = " RENAME TO ";
+    public static final String COALESCE = "COALESCE(";
+    public static final String PRAGMA = "PRAGMA ";
+    public static final String TABLE_INFO = "table_info";
+    public static final String INDEX_LIST = "index_list";
+    public static final String INDEX_INFO = "index_info";
+    public static final String SQLITE_MASTER = "sqlite_master";
     public static final String PARENTHESES_LEFT = "(";
     public static final String PARENTHESES_RIGHT = ")";
     public static final String COMMA = ", ";
@@ -35,6 +56,49 @@ public class SQLBuilder {
     public static final String EQUAL = "=";
     public static final String SINGLE_QUOTE = "'";
     public static final String AND = " AND ";
+    public static final String INSERT_INTO = "INSERT INTO ";
+    public static final String INSERT_OR_REPLACE_INTO = "INSERT OR REPLACE INTO ";
+    public static final String INSERT_OR_IGNORE_INTO = "INSERT OR IGNORE INTO ";
+    public static final String ON_CONFLICT = " ON CONFLICT";
+    public static final String DO_UPDATE_SET = " DO UPDATE SET ";
+    public static final String DO_NOTHING = " DO NOTHING";
+    public static final String EXCLUDED = "excluded.";
+    public static final String UPDATE = "UPDATE ";
+    public static final String DELETE_FROM = "DELETE FROM ";
+    public static final String SET = " SET ";
+    public static final String WHERE = " WHERE ";
+    public static final String VALUES = " VALUES ";
+    public static final String DEFAULT_VALUES = " DEFAULT VALUES";
+    public static final String PLACEHOLDER = "?";
+    public static final String SELECT = "SELECT ";
+    public static final String SELECT_EXISTS = "SELECT EXISTS(SELECT 1 FROM ";
+    public static final String SELECT_COUNT_FROM = "SELECT COUNT(*) FROM ";
+    public static final String FROM = " FROM ";
+    public static final String SELECT_ALL_FROM = "SELECT * FROM ";
+    public static final String SCHEMA_TABLE = "tiny_orm_schema";
+    public static final String SCHEMA_NAME = "name";
+    public static final String SCHEMA_FINGERPRINT = "fingerprint";
+
+    /**
+     * SQLite 3.32 之前 SQLITE_MAX_VARIABLE_NUMBER 的默认值，批量按主键操作时每条语句的参数上限
+     */
+    public static final int MAX_VARIABLES = 999;
+    public static final String IN = " IN ";
+    public static final String OR = " OR ";
+    public static final String NOT_EQUAL = "<>";
+    public static final String LIKE = " LIKE ";
+    public static final String BETWEEN = " BETWEEN ";
+    public static final String IS_NULL = " IS NULL";
+    public static final String IS_NOT_NULL = " IS NOT NULL";
+    public static final String ORDER_BY = " ORDER BY ";
+    public static final String ASC = " ASC";
+    public static final String DESC = " DESC";
+    public static final String LIMIT = " LIMIT ";
+    public static final String OFFSET = " OFFSET ";
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final byte PAGE_TOKEN_VERSION = 1;
 
     private final TableManager mTableManager;
 
@@ -47,10 +111,30 @@ public class SQLBuilder {
         if (table == null) {
             return null;
         }
+        return buildCreateTableSQL(clazz, table.getName());
+    }
+
+    /**
+     * 按 Bean 定义以 name 为表名建表，用于迁移时重建表
+     */
+    public String buildCreateTableSQL(Class<?> clazz, String name) {
+        return buildCreateTableSQL(clazz, name, null);
+    }
+
+    /**
+     * 按 Bean 定义以 name 为表名建表，并追加 Bean 中没有的列，用于重建时保留这些列
+     *
+     * @param extraColumns 追加的列定义，如 "c TEXT NOT NULL DEFAULT 0"，可以为 null
+     */
+    public String buildCreateTableSQL(Class<?> clazz, String name, List<String> extraColumns) {
+        Table table = mTableManager.getTable(clazz);
+        if (table == null) {
+            return null;
+        }
 
         StringBuilder builder = new StringBuilder();
         builder.append(CREATE).append(TABLE_IF_NOT_EXISTS);
-        builder.append(table.getName());
+        builder.append(name);
         builder.append(PARENTHESES_LEFT);
 
         boolean singlePrimaryKey = table.getPrimaryKey().size() == 1;
@@ -77,6 +161,11 @@ public class SQLBuilder {
             }
             builder.append(COMMA);
         }
+        if (extraColumns != null) {
+            for (String extraColumn : extraColumns) {
+                builder.append(extraColumn).append(COMMA);
+            }
+        }
         if (table.getPrimaryKey().size() > 1) {
             builder.append(PRIMARY_KEY);
             builder.append(PARENTHESES_LEFT);
@@ -174,199 +263,1422 @@ public class SQLBuilder {
         return null;
     }
 
-    public ContentValues buildInsertValues(Object object) {
-        Table table = mTableManager.getTable(object);
+    /**
+     * PRAGMA table_info(table)，返回 cid, name, type, notnull, dflt_value, pk
+     */
+    public String buildTableInfoSQL(Class<?> clazz) {
+        Table table = mTableManager.getTable(clazz);
         if (table == null) {
             return null;
         }
-        ContentValues values = new ContentValues();
-        Map<String, Column> columnMap = table.getColumns();
-        try {
-            for (String key : columnMap.keySet()) {
-                Column column = columnMap.get(key);
-                if (column == null) {
-                    continue;
-                }
-                /**
-                 * 如果是自增长主键，则不赋值。
-                 */
-                if (column.getId() != null && column.getId().isAutoIncrement()) {
-                    continue;
-                }
-                String columnName = column.getName();
-                Field columnField = column.getField();
+        return PRAGMA + TABLE_INFO + PARENTHESES_LEFT + table.getName() + PARENTHESES_RIGHT;
+    }
 
-                Object columnValue = columnField.get(object);
-                if (columnValue == null) {
-                    values.putNull(columnName);
-                    continue;
-                }
+    /**
+     * PRAGMA index_list(table)，返回 seq, name, unique
+     */
+    public String buildIndexListSQL(Class<?> clazz) {
+        Table table = mTableManager.getTable(clazz);
+        if (table == null) {
+            return null;
+        }
+        return PRAGMA + INDEX_LIST + PARENTHESES_LEFT + table.getName() + PARENTHESES_RIGHT;
+    }
 
-                int columnClassType = column.getClassType();
-                convertToValue(values, columnName, columnValue, columnClassType);
-            }
-        } catch (IllegalAccessException ignored) {}
-        return values;
+    /**
+     * PRAGMA index_info(index)，返回 seqno, cid, name
+     */
+    public String buildIndexInfoSQL(String indexName) {
+        return PRAGMA + INDEX_INFO + PARENTHESES_LEFT + indexName + PARENTHESES_RIGHT;
     }
 
-    public ContentValues buildUpdateValues(Object object, String[] columns) {
-        Table table = mTableManager.getTable(object);
+    /**
+     * ALTER TABLE table ADD COLUMN column TYPE，SQLite 不允许新增的列带有 PRIMARY KEY、UNIQUE
+     * 或者没有默认值的 NOT NULL，这些情况需要重建表
+     */
+    public String buildAddColumnSQL(Class<?> clazz, Column column) {
+        Table table = mTableManager.getTable(clazz);
+        if (table == null || column == null) {
+            return null;
+        }
+        return ALTER_TABLE + table.getName() + ADD_COLUMN + column.getName()
+                + DataType.getSQLDataTypeString(column.getClassType());
+    }
+
+    /**
+     * SELECT sql FROM sqlite_master WHERE type='index' AND name=?，读取索引的建立语句
+     */
+    public String buildIndexDefinitionSQL() {
+        return SELECT + "sql" + FROM + SQLITE_MASTER + WHERE + "type='index'" + AND + "name"
+                + EQUAL + PLACEHOLDER;
+    }
+
+    /**
+     * DROP INDEX IF EXISTS index
+     */
+    public String buildDropIndexSQL(String indexName) {
+        return DROP + INDEX_IF_EXISTS + indexName;
+    }
+
+    /**
+     * DROP TABLE IF EXISTS table
+     */
+    public String buildDropTableSQL(String tableName) {
+        return DROP + TABLE_IF_EXISTS + tableName;
+    }
+
+    /**
+     * ALTER TABLE from RENAME TO to
+     */
+    public String buildRenameTableSQL(String from, String to) {
+        return ALTER_TABLE + from + RENAME_TO + to;
+    }
+
+    /**
+     * 重建表时把旧表的数据复制到新表：INSERT INTO to (c1, c2) SELECT c1, c2 FROM table
+     * 旧表中不存在的 NOT NULL 列、以及变为 NOT NULL 的列用类型的零值填充，其余不存在的列为 NULL
+     *
+     * @param to 新表名
+     * @param existing 旧表中已有的列名，小写
+     * @param extraColumns 旧表中 Bean 没有的列名，原样复制，可以为 null
+     */
+    public String buildCopyTableSQL(Class<?> clazz, String to, Set<String> existing,
+                                    List<String> extraColumns) {
+        Table table = mTableManager.getTable(clazz);
         if (table == null) {
             return null;
         }
-        ContentValues values = new ContentValues();
-        Map<String, Column> columnMap = table.getColumns();
-        try {
-            for (String key : columnMap.keySet()) {
-                Column column = columnMap.get(key);
-                if (column == null) {
-                    continue;
-                }
-                if (column.getId() != null) {
-                    continue;
-                }
-                String columnName = column.getName();
-                if (columns != null && !contains(columnName, columns)) {
-                    continue;
+        StringBuilder columns = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        if (extraColumns != null) {
+            for (String extraColumn : extraColumns) {
+                if (columns.length() > 0) {
+                    columns.append(COMMA);
+                    values.append(COMMA);
                 }
+                columns.append(extraColumn);
+                values.append(extraColumn);
+            }
+        }
+        for (Column column : table.getColumnArray()) {
+            boolean exists = existing.contains(column.getName().toLowerCase(Locale.ENGLISH));
+            if (!exists && column.isCanBeNull()) {
+                continue;
+            }
+            if (columns.length() > 0) {
+                columns.append(COMMA);
+                values.append(COMMA);
+            }
+            columns.append(column.getName());
+            if (column.isCanBeNull()) {
+                values.append(column.getName());
+            } else if (exists) {
+                values.append(COALESCE).append(column.getName()).append(COMMA)
+                        .append(zeroValue(column)).append(PARENTHESES_RIGHT);
+            } else {
+                values.append(zeroValue(column));
+            }
+        }
+        if (columns.length() == 0) {
+            return null;
+        }
+        return INSERT_INTO + to + PARENTHESES_LEFT + columns + PARENTHESES_RIGHT + BLANK
+                + SELECT + values + FROM + table.getName();
+    }
 
-                Field columnField = column.getField();
+    /**
+     * 记录每个表结构指纹的元数据表 tiny_orm_schema (name, fingerprint)
+     */
+    public String buildCreateSchemaTableSQL() {
+        return CREATE + TABLE_IF_NOT_EXISTS + SCHEMA_TABLE + PARENTHESES_LEFT
+                + SCHEMA_NAME + DataType.TEXT + PRIMARY_KEY + COMMA
+                + SCHEMA_FINGERPRINT + DataType.TEXT + NOT_NULL + PARENTHESES_RIGHT;
+    }
 
-                Object columnValue = columnField.get(object);
-                if (columnValue == null) {
-                    values.putNull(columnName);
-                    continue;
-                }
+    /**
+     * INSERT OR REPLACE INTO tiny_orm_schema (name, fingerprint) VALUES (?, ?)
+     */
+    public String buildSaveFingerprintSQL() {
+        return INSERT_OR_REPLACE_INTO + SCHEMA_TABLE + PARENTHESES_LEFT + SCHEMA_NAME + COMMA
+                + SCHEMA_FINGERPRINT + PARENTHESES_RIGHT + VALUES + PARENTHESES_LEFT
+                + PLACEHOLDER + COMMA + PLACEHOLDER + PARENTHESES_RIGHT;
+    }
 
-                int columnClassType = column.getClassType();
-                convertToValue(values, columnName, columnValue, columnClassType);
+    /**
+     * SELECT name, fingerprint FROM tiny_orm_schema
+     */
+    public String buildQueryFingerprintsSQL() {
+        return SELECT + SCHEMA_NAME + COMMA + SCHEMA_FINGERPRINT + FROM + SCHEMA_TABLE;
+    }
+
+    /**
+     * DELETE FROM tiny_orm_schema WHERE name=?
+     */
+    public String buildDeleteFingerprintSQL() {
+        return DELETE_FROM + SCHEMA_TABLE + WHERE + SCHEMA_NAME + EQUAL + PLACEHOLDER;
+    }
+
+    /**
+     * 表结构指纹，对建表与建索引语句做 64 位 FNV-1a 哈希，列、类型、约束、索引任一变化都会改变指纹
+     */
+    public String buildSchemaFingerprint(Class<?> clazz) {
+        String createSQL = buildCreateTableSQL(clazz);
+        if (createSQL == null) {
+            return null;
+        }
+        long hash = fnv1a(FNV_OFFSET_BASIS, createSQL);
+        String[] indexSQLs = buildCreateIndexSQL(clazz);
+        if (indexSQLs != null) {
+            for (String indexSQL : indexSQLs) {
+                hash = fnv1a(fnv1a(hash, SEMICOLON), indexSQL);
             }
-        } catch (IllegalAccessException ignored) {}
-        return values;
+        }
+        return Long.toHexString(hash);
     }
 
-    public Object buildQueryValues(Class<?> clazz, Cursor cursor) {
+    /**
+     * INSERT OR REPLACE INTO table (c1, c2) VALUES (?, ?)，不包含自增主键
+     */
+    public String buildInsertSQL(Class<?> clazz) {
         Table table = mTableManager.getTable(clazz);
         if (table == null) {
             return null;
         }
-        Object objectValue = null;
-        try {
-            objectValue = clazz.newInstance();
-            Map<String, Column> columnMap = table.getColumns();
-            for (String key : columnMap.keySet()) {
-                Column column = columnMap.get(key);
-                if (column == null) {
-                    continue;
-                }
-                String columnName = column.getName();
-                int index = cursor.getColumnIndex(columnName);
-                if (index == -1 || cursor.isNull(index)) {
-                    continue;
-                }
+        StringBuilder builder = new StringBuilder();
+        appendInsert(builder, table, INSERT_OR_REPLACE_INTO);
+        return builder.toString();
+    }
 
-                int columnClassType = column.getClassType();
-                Object value = null;
-                switch (columnClassType) {
-                    case DataType.CLASS_TYPE_STRING:
-                        value = cursor.getString(index);
-                        break;
-                    case DataType.CLASS_TYPE_BOOLEAN:
-                        int intValue = cursor.getInt(index);
-                        value = (intValue != 0);
-                        break;
-                    case DataType.CLASS_TYPE_CHAR:
-                        String strValue = cursor.getString(index);
-                        if (strValue.length() > 0) {
-                            value = strValue.charAt(0);
-                        }
-                        break;
-                    case DataType.CLASS_TYPE_DOUBLE:
-                        value = cursor.getDouble(index);
-                        break;
-                    case DataType.CLASS_TYPE_FLOAT:
-                        value = cursor.getFloat(index);
-                        break;
-                    case DataType.CLASS_TYPE_LONG:
-                        value = cursor.getLong(index);
-                        break;
-                    case DataType.CLASS_TYPE_INT:
-                        value = cursor.getInt(index);
-                        break;
-                    case DataType.CLASS_TYPE_SHORT:
-                        value = cursor.getShort(index);
-                        break;
-                    case DataType.CLASS_TYPE_BYTE:
-                        value = (byte) cursor.getShort(index);
-                        break;
-                    case DataType.CLASS_TYPE_DATE:
-                        long longValue = cursor.getLong(index);
-                        value = new Date(longValue);
-                        break;
-                    case DataType.CLASS_TYPE_BYTE_ARRAY:
-                        value = cursor.getBlob(index);
-                        break;
-                }
-                Field columnField = column.getField();
-                columnField.set(objectValue, value);
+    /**
+     * INSERT OR IGNORE INTO table (c1, c2) VALUES (?, ?)，参数与 buildInsertSQL 一致
+     * 没有主键或者主键自增时无法按主键判重，返回 null
+     */
+    public String buildInsertOrIgnoreSQL(Class<?> clazz) {
+        Table table = mTableManager.getTable(clazz);
+        if (!isUpsertable(table)) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        appendInsert(builder, table, INSERT_OR_IGNORE_INTO);
+        return builder.toString();
+    }
+
+    /**
+     * INSERT INTO table (c1, c2) VALUES (?, ?) ON CONFLICT(pk) DO NOTHING，参数与 buildInsertSQL 一致
+     * 与 INSERT OR IGNORE 不同，只忽略主键冲突，需要 SQLite 3.24 以上
+     * 没有主键或者主键自增时无法按主键判重，返回 null
+     */
+    public String buildInsertOrNothingSQL(Class<?> clazz) {
+        Table table = mTableManager.getTable(clazz);
+        if (!isUpsertable(table)) {
+            return null;
+        }
+        return buildUpsertSQL(table, new ArrayList<Column>());
+    }
+
+    /**
+     * INSERT INTO table (c1, c2) VALUES (?, ?) ON CONFLICT(pk) DO UPDATE SET c2=excluded.c2
+     * 参数与 buildInsertSQL 一致，需要 SQLite 3.24 以上
+     * 没有主键或者主键自增时无法按主键判重，返回 null
+     */
+    public String buildUpsertSQL(Class<?> clazz) {
+        Table table = mTableManager.getTable(clazz);
+        if (!isUpsertable(table)) {
+            return null;
+        }
+        List<Column> updateColumns = new ArrayList<>();
+        for (Column column : table.getColumns().values()) {
+            if (isUpdateColumn(column)) {
+                updateColumns.add(column);
             }
-        } catch (InstantiationException | IllegalAccessException ignored) {}
-        return objectValue;
+        }
+        return buildUpsertSQL(table, updateColumns);
     }
 
-    public String buildWhereSQL(Object object) {
-        Table table = mTableManager.getTable(object);
-        if (table == null) {
+    /**
+     * 同 {@link #buildUpsertSQL(Class)}，冲突时只更新指定的列
+     */
+    public String buildUpsertSQL(Class<?> clazz, List<Column> updateColumns) {
+        Table table = mTableManager.getTable(clazz);
+        if (!isUpsertable(table) || updateColumns == null) {
             return null;
         }
+        long mask = buildColumnMask(table, updateColumns);
+        if (mask != 0) {
+            String sql = table.getUpsertSQL(mask);
+            if (sql != null) {
+                return sql;
+            }
+        }
+        String sql = buildUpsertSQL(table, updateColumns);
+        if (mask != 0) {
+            table.setUpsertSQL(mask, sql);
+        }
+        return sql;
+    }
 
-        List<Column> primaryKeys = table.getPrimaryKey();
-        if (primaryKeys == null || primaryKeys.isEmpty()) {
+    /**
+     * UPDATE table SET c1=?, c2=? WHERE pk=?，先非主键列后主键列
+     */
+    public String buildUpdateSQL(Class<?> clazz) {
+        Table table = mTableManager.getTable(clazz);
+        if (table == null || table.getPrimaryKey().isEmpty()) {
             return null;
         }
 
-        StringBuilder whereCase = new StringBuilder();
-        for (Column primaryKey : primaryKeys) {
-            whereCase.append(buildWhereSQLiteForPrimaryKey(object, primaryKey));
-            whereCase.append(AND);
+        StringBuilder builder = new StringBuilder();
+        builder.append(UPDATE);
+        builder.append(table.getName());
+        builder.append(SET);
+        boolean empty = true;
+        for (Column column : table.getColumns().values()) {
+            if (!isUpdateColumn(column)) {
+                continue;
+            }
+            if (!empty) {
+                builder.append(COMMA);
+            }
+            builder.append(column.getName()).append(EQUAL).append(PLACEHOLDER);
+            empty = false;
+        }
+        if (empty) {
+            return null;
         }
+        builder.append(WHERE);
+        builder.append(buildWhereSQL(clazz));
+        return builder.toString();
+    }
 
-        if (whereCase.toString().endsWith(AND)) {
-            whereCase.delete(whereCase.lastIndexOf(AND), whereCase.length() - 1);
+    /**
+     * DELETE FROM table WHERE pk=?
+     */
+    public String buildDeleteSQL(Class<?> clazz) {
+        Table table = mTableManager.getTable(clazz);
+        if (table == null || table.getPrimaryKey().isEmpty()) {
+            return null;
         }
-        return whereCase.toString();
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(DELETE_FROM);
+        builder.append(table.getName());
+        builder.append(WHERE);
+        builder.append(buildWhereSQL(clazz));
+        return builder.toString();
     }
 
-    private String buildWhereSQLiteForPrimaryKey(Object object,
-                                                 Column primaryKey) {
-        String id = "";
-        Object value = null;
-        String whereCase = "";
-        int sqlType = DataType.SQL_TYPE_BLOB;
-        try {
-            if (primaryKey != null && primaryKey.getId() != null) {
-                id = primaryKey.getName();
-                value = primaryKey.getField().get(object);
-                sqlType = DataType.getSQLDataType(primaryKey.getClassType());
+    /**
+     * UPDATE table SET c1=?, c2=? WHERE pk=?，只更新指定的列
+     */
+    public String buildUpdateSQL(Class<?> clazz, List<Column> columns) {
+        Table table = mTableManager.getTable(clazz);
+        if (table == null || table.getPrimaryKey().isEmpty()
+                || columns == null || columns.isEmpty()) {
+            return null;
+        }
+
+        long mask = buildColumnMask(table, columns);
+        if (mask != 0) {
+            String sql = table.getUpdateSQL(mask);
+            if (sql != null) {
+                return sql;
             }
-        } catch (IllegalAccessException ignored) {}
+        }
 
-        if (TextUtils.isEmpty(id)) {
-            return whereCase;
+        StringBuilder builder = new StringBuilder();
+        builder.append(UPDATE);
+        builder.append(table.getName());
+        builder.append(SET);
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                builder.append(COMMA);
+            }
+            builder.append(columns.get(i).getName()).append(EQUAL).append(PLACEHOLDER);
+        }
+        builder.append(WHERE);
+        builder.append(buildWhereSQL(clazz));
+        String sql = builder.toString();
+        if (mask != 0) {
+            table.setUpdateSQL(mask, sql);
         }
+        return sql;
+    }
 
-        switch (sqlType) {
-            case DataType.SQL_TYPE_BLOB:
-                break;
-            case DataType.SQL_TYPE_TEXT:
-                whereCase = id + EQUAL + SINGLE_QUOTE + value + SINGLE_QUOTE;
-                break;
-            case DataType.SQL_TYPE_REAL:
-            case DataType.SQL_TYPE_INTEGER:
-                whereCase = id + EQUAL + value;
-                break;
+    /**
+     * StatementCache 某个类型对应的 SQL，缓存在 Table 上
+     *
+     * @param type StatementCache.INSERT 等
+     * @return 该类型不可用时返回 null
+     */
+    public String buildStatementSQL(Class<?> clazz, int type) {
+        Table table = mTableManager.getTable(clazz);
+        if (table == null) {
+            return null;
+        }
+        String sql = table.getStatementSQL(type);
+        if (sql == null) {
+            switch (type) {
+                case StatementCache.INSERT:
+                    sql = buildInsertSQL(clazz);
+                    break;
+                case StatementCache.UPDATE:
+                    sql = buildUpdateSQL(clazz);
+                    break;
+                case StatementCache.DELETE:
+                    sql = buildDeleteSQL(clazz);
+                    break;
+                case StatementCache.UPSERT:
+                    sql = buildUpsertSQL(clazz);
+                    break;
+                case StatementCache.INSERT_OR_IGNORE:
+                    sql = buildInsertOrIgnoreSQL(clazz);
+                    break;
+                case StatementCache.EXISTS:
+                    sql = buildExistSQL(clazz);
+                    break;
+                case StatementCache.COUNT:
+                    sql = buildCountSQL(clazz, null);
+                    break;
+                default:
+                    return null;
+            }
+            if (sql == null) {
+                sql = "";
+            }
+            table.setStatementSQL(type, sql);
+        }
+        return sql.isEmpty() ? null : sql;
+    }
+
+    /**
+     * 预先生成 Table 以及各类 SQL 模板，避免首次读写时的开销
+     *
+     * @return Bean 不是 Entity 时返回 false
+     */
+    public boolean prepare(Class<?> clazz) {
+        Table table = mTableManager.getTable(clazz);
+        if (table == null) {
+            return false;
+        }
+        table.getColumnArray();
+        buildWhereSQL(clazz);
+        buildQuerySQL(clazz);
+        for (int type = 0; type < StatementCache.SIZE; type++) {
+            buildStatementSQL(clazz, type);
+        }
+        return true;
+    }
+
+    /**
+     * SELECT EXISTS(SELECT 1 FROM table WHERE pk=?)，参数与 buildWhereSQL 一致
+     */
+    public String buildExistSQL(Class<?> clazz) {
+        Table table = mTableManager.getTable(clazz);
+        String where = buildWhereSQL(clazz);
+        if (table == null || where == null) {
+            return null;
+        }
+        return SELECT_EXISTS + table.getName() + WHERE + where + PARENTHESES_RIGHT;
+    }
+
+    /**
+     * SELECT COUNT(*) FROM table WHERE where
+     *
+     * @param where 查询条件，不含 WHERE，为空时统计所有行
+     */
+    public String buildCountSQL(Class<?> clazz, String where) {
+        Table table = mTableManager.getTable(clazz);
+        if (table == null) {
+            return null;
+        }
+        if (TextUtils.isEmpty(where)) {
+            return SELECT_COUNT_FROM + table.getName();
+        }
+        return SELECT_COUNT_FROM + table.getName() + WHERE + where;
+    }
+
+    /**
+     * 键集分页的排序列：索引的列（未指定索引时为空）加上未包含的主键列，保证排序唯一
+     * 索引列可以为 NULL，条件的展开方式见 {@link #buildKeysetSQL(Class, Column[], Object[])}
+     *
+     * @param indexName @Index 定义的索引名，为 null 时只按主键分页
+     * @return 没有主键、索引不存在或者索引列无效时返回 null
+     */
+    public Column[] buildKeysetColumns(Class<?> clazz, String indexName) {
+        Table table = mTableManager.getTable(clazz);
+        if (table == null || table.getPrimaryKey().isEmpty()) {
+            return null;
+        }
+        Column[] columnArray = table.getColumnArray();
+        List<Column> columns = new ArrayList<>();
+        if (indexName != null) {
+            Table.Index index = null;
+            for (Table.Index value : table.getIndexes()) {
+                if (TextUtils.equals(value.getName(), indexName)) {
+                    index = value;
+                }
+            }
+            if (index == null) {
+                return null;
+            }
+            for (String value : index.getValues().split(",")) {
+                String name = value.trim().split("\\s+")[0];
+                int position = table.getColumnIndex(name);
+                if (position == -1) {
+                    return null;
+                }
+                if (!columns.contains(columnArray[position])) {
+                    columns.add(columnArray[position]);
+                }
+            }
+        }
+        for (Column primaryKey : table.getPrimaryKey()) {
+            if (!columns.contains(primaryKey)) {
+                columns.add(primaryKey);
+            }
+        }
+        return columns.toArray(new Column[0]);
+    }
+
+    /**
+     * SELECT * FROM table WHERE (k1, k2) &gt; (?, ?) ORDER BY k1, k2 LIMIT ?
+     * 行值比较需要 SQLite 3.15，这里展开为 k1&gt;? OR (k1=? AND k2&gt;?)，参数由 {@link #buildKeysetArgs} 生成
+     * 多列时在前面加上 k1&gt;=? AND (...)，否则 OR 条件无法使用索引定位起点，只能从头扫描
+     * SQLite 升序时 NULL 排在最前，值为 NULL 的列展开为 k IS NOT NULL 与 k IS NULL，不占用参数
+     *
+     * @param values 上一页最后一行排序列的值，第一页为 null
+     */
+    public String buildKeysetSQL(Class<?> clazz, Column[] columns, Object[] values) {
+        Table table = mTableManager.getTable(clazz);
+        if (table == null || columns == null || columns.length == 0
+                || (values != null && values.length != columns.length)) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        builder.append(SELECT_ALL_FROM).append(table.getName());
+        if (values != null) {
+            builder.append(WHERE);
+            boolean leading = columns.length > 1 && values[0] != null;
+            if (leading) {
+                builder.append(columns[0].getName()).append(">=").append(PLACEHOLDER);
+                builder.append(AND).append(PARENTHESES_LEFT);
+            }
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    builder.append(OR);
+                }
+                builder.append(PARENTHESES_LEFT);
+                for (int j = 0; j < i; j++) {
+                    builder.append(columns[j].getName());
+                    builder.append(values[j] == null ? IS_NULL : EQUAL + PLACEHOLDER);
+                    builder.append(AND);
+                }
+                builder.append(columns[i].getName());
+                builder.append(values[i] == null ? IS_NOT_NULL : ">" + PLACEHOLDER);
+                builder.append(PARENTHESES_RIGHT);
+            }
+            if (leading) {
+                builder.append(PARENTHESES_RIGHT);
+            }
+        }
+        builder.append(ORDER_BY);
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                builder.append(COMMA);
+            }
+            builder.append(columns[i].getName());
+        }
+        builder.append(LIMIT).append(PLACEHOLDER);
+        return builder.toString();
+    }
+
+    /**
+     * 把上一页最后一行的排序列的值展开为 {@link #buildKeysetSQL} 的参数，NULL 值不占用参数
+     */
+    public static Object[] buildKeysetArgs(Object[] values) {
+        List<Object> args = new ArrayList<>();
+        if (values.length > 1 && values[0] != null) {
+            args.add(values[0]);
+        }
+        for (int i = 0; i < values.length; i++) {
+            for (int j = 0; j <= i; j++) {
+                if (values[j] != null) {
+                    args.add(values[j]);
+                }
+            }
+        }
+        return args.toArray();
+    }
+
+    /**
+     * 读取当前行排序列的值，形式与绑定参数一致
+     */
+    public static Object[] readKeysetValues(Cursor cursor, Column[] columns, int[] indexes) {
+        Object[] values = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            int index = indexes[i];
+            if (index != -1 && !cursor.isNull(index)) {
+                values[i] = toBindArg(readValue(cursor, index, columns[i].getClassType()));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * 把排序列的值编码为分页令牌，令牌中包含表名与排序列的哈希，防止传给其他分页查询
+     *
+     * @return 编码失败时返回 null
+     */
+    public static String buildPageToken(String tableName, Column[] columns, Object[] values) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        try {
+            output.writeByte(PAGE_TOKEN_VERSION);
+            output.writeLong(buildKeysetSignature(tableName, columns));
+            for (Object value : values) {
+                if (value == null) {
+                    output.writeByte(0);
+                } else if (value instanceof Double || value instanceof Float) {
+                    output.writeByte(2);
+                    output.writeDouble(((Number) value).doubleValue());
+                } else if (value instanceof Number) {
+                    output.writeByte(1);
+                    output.writeLong(((Number) value).longValue());
+                } else if (value instanceof byte[]) {
+                    output.writeByte(4);
+                    output.writeInt(((byte[]) value).length);
+                    output.write((byte[]) value);
+                } else {
+                    output.writeByte(3);
+                    output.writeUTF(value.toString());
+                }
+            }
+            output.flush();
+        } catch (IOException e) {
+            return null;
+        }
+        return Base64.encodeToString(bytes.toByteArray(), Base64.NO_WRAP | Base64.URL_SAFE);
+    }
+
+    /**
+     * 解析 {@link #buildPageToken} 生成的令牌
+     *
+     * @return 令牌无效或者不属于这个分页查询时返回 null
+     */
+    public static Object[] readPageToken(String tableName, Column[] columns, String token) {
+        try {
+            byte[] data = Base64.decode(token, Base64.NO_WRAP | Base64.URL_SAFE);
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+            if (input.readByte() != PAGE_TOKEN_VERSION
+                    || input.readLong() != buildKeysetSignature(tableName, columns)) {
+                return null;
+            }
+            Object[] values = new Object[columns.length];
+            for (int i = 0; i < values.length; i++) {
+                byte tag = input.readByte();
+                if (tag == 1) {
+                    values[i] = input.readLong();
+                } else if (tag == 2) {
+                    values[i] = input.readDouble();
+                } else if (tag == 3) {
+                    values[i] = input.readUTF();
+                } else if (tag == 4) {
+                    byte[] blob = new byte[input.readInt()];
+                    input.readFully(blob);
+                    values[i] = blob;
+                } else if (tag != 0) {
+                    return null;
+                }
+            }
+            return input.available() == 0 ? values : null;
+        } catch (IOException | IllegalArgumentException | NegativeArraySizeException e) {
+            return null;
+        }
+    }
+
+    private static long buildKeysetSignature(String tableName, Column[] columns) {
+        long hash = fnv1a(FNV_OFFSET_BASIS, tableName);
+        for (Column column : columns) {
+            hash = fnv1a(hash, COMMA);
+            hash = fnv1a(hash, column.getName());
+        }
+        return hash;
+    }
+
+    /**
+     * SELECT * FROM table WHERE pk=?，缓存在 Table 上
+     */
+    public String buildQuerySQL(Class<?> clazz) {
+        Table table = mTableManager.getTable(clazz);
+        if (table == null) {
+            return null;
+        }
+        String sql = table.getQuerySQL();
+        if (sql == null) {
+            String where = buildWhereSQL(clazz);
+            if (where == null) {
+                return null;
+            }
+            sql = SELECT_ALL_FROM + table.getName() + WHERE + where;
+            table.setQuerySQL(sql);
+        }
+        return sql;
+    }
+
+    /**
+     * 主键条件模板 "pk1=? AND pk2=?"，缓存在 Table 上，参数由 {@link #buildWhereArgs(Object)} 生成
+     */
+    public String buildWhereSQL(Class<?> clazz) {
+        Table table = mTableManager.getTable(clazz);
+        if (table == null) {
+            return null;
+        }
+        String where = table.getPrimaryKeyWhere();
+        if (where == null) {
+            List<Column> primaryKeys = table.getPrimaryKey();
+            if (primaryKeys == null || primaryKeys.isEmpty()) {
+                return null;
+            }
+            StringBuilder builder = new StringBuilder();
+            appendPrimaryKeyWhere(builder, table);
+            where = builder.toString();
+            table.setPrimaryKeyWhere(where);
+        }
+        return where;
+    }
+
+    /**
+     * SELECT * FROM table WHERE pk IN (?, ?)，复合主键为 (a=? AND b=?) OR (a=? AND b=?)
+     *
+     * @param count 主键个数，参数个数为 count 乘以主键列数
+     */
+    public String buildQueryByIdsSQL(Class<?> clazz, int count) {
+        Table table = mTableManager.getTable(clazz);
+        if (table == null || table.getPrimaryKey().isEmpty() || count <= 0) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        builder.append(SELECT_ALL_FROM).append(table.getName()).append(WHERE);
+        appendIdsWhere(builder, table, count);
+        return builder.toString();
+    }
+
+    /**
+     * SELECT pk FROM table WHERE pk IN (?, ?)，只返回主键列
+     */
+    public String buildExistByIdsSQL(Class<?> clazz, int count) {
+        Table table = mTableManager.getTable(clazz);
+        if (table == null || table.getPrimaryKey().isEmpty() || count <= 0) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        builder.append(SELECT);
+        boolean first = true;
+        for (Column primaryKey : table.getPrimaryKey()) {
+            if (!first) {
+                builder.append(COMMA);
+            }
+            builder.append(primaryKey.getName());
+            first = false;
+        }
+        builder.append(FROM).append(table.getName()).append(WHERE);
+        appendIdsWhere(builder, table, count);
+        return builder.toString();
+    }
+
+    /**
+     * DELETE FROM table WHERE pk IN (?, ?)
+     */
+    public String buildDeleteByIdsSQL(Class<?> clazz, int count) {
+        Table table = mTableManager.getTable(clazz);
+        if (table == null || table.getPrimaryKey().isEmpty() || count <= 0) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        builder.append(DELETE_FROM).append(table.getName()).append(WHERE);
+        appendIdsWhere(builder, table, count);
+        return builder.toString();
+    }
+
+    /**
+     * 把主键值转换为参数，与 {@link #buildWhereArgs(Object)} 的形式一致
+     *
+     * @param id 单主键时为主键值，复合主键时为按主键顺序排列的 List 或者 Object[]
+     * @return 个数不匹配或者含有 null 时返回 null
+     */
+    public Object[] buildIdArgs(Class<?> clazz, Object id) {
+        Table table = mTableManager.getTable(clazz);
+        if (table == null || id == null) {
+            return null;
+        }
+        List<Column> primaryKeys = table.getPrimaryKey();
+        Object[] values;
+        if (primaryKeys.size() == 1) {
+            values = new Object[] {id};
+        } else if (id instanceof Object[]) {
+            values = ((Object[]) id).clone();
+        } else if (id instanceof List) {
+            values = ((List<?>) id).toArray();
+        } else {
+            return null;
+        }
+        if (values.length != primaryKeys.size()) {
+            return null;
+        }
+        int index = 0;
+        for (Column primaryKey : primaryKeys) {
+            if (values[index] == null) {
+                return null;
+            }
+            values[index] = toArg(values[index], primaryKey.getClassType());
+            index++;
+        }
+        return values;
+    }
+
+    /**
+     * 读取 buildExistByIdsSQL 查询结果当前行的主键，形式与 {@link #buildWhereArgs(Object)} 一致
+     */
+    public Object[] readIdArgs(Table table, Cursor cursor) {
+        List<Column> primaryKeys = table.getPrimaryKey();
+        Object[] values = new Object[primaryKeys.size()];
+        int index = 0;
+        for (Column primaryKey : primaryKeys) {
+            Object value = cursor.isNull(index) ? null
+                    : readValue(cursor, index, primaryKey.getClassType());
+            values[index] = toArg(value, primaryKey.getClassType());
+            index++;
+        }
+        return values;
+    }
+
+    /**
+     * 主键条件的参数，与 {@link #buildWhereSQL(Class)} 对应，按类型绑定时使用 {@link #bindArgs}
+     */
+    public Object[] buildWhereArgs(Object object) {
+        Table table = mTableManager.getTable(object);
+        if (table == null) {
+            return null;
+        }
+        List<Column> primaryKeys = table.getPrimaryKey();
+        if (primaryKeys == null || primaryKeys.isEmpty()) {
+            return null;
+        }
+
+        RowAdapter<Object> adapter = table.getAdapter();
+        Object[] args = adapter != null ? adapter.getPrimaryKey(object) : null;
+        if (args == null) {
+            args = new Object[primaryKeys.size()];
+            int index = 0;
+            try {
+                for (Column primaryKey : primaryKeys) {
+                    args[index++] = primaryKey.getField().get(object);
+                }
+            } catch (IllegalAccessException ignored) {}
+        }
+        int index = 0;
+        for (Column primaryKey : primaryKeys) {
+            args[index] = toArg(args[index], primaryKey.getClassType());
+            index++;
+        }
+        return args;
+    }
+
+    /**
+     * 对象所在行的标识，由 Table 与 {@link #buildWhereArgs(Object)} 组成
+     *
+     * @return 不是 Entity、没有主键或者主键值为 null 时返回 null
+     */
+    public EntityKey buildEntityKey(Object object) {
+        Table table = mTableManager.getTable(object);
+        if (table == null) {
+            return null;
+        }
+        return EntityKey.of(table, buildWhereArgs(object));
+    }
+
+    /**
+     * 从 offset 开始（从 1 计数）按类型绑定参数
+     */
+    public static void bindArgs(SQLiteProgram program, Object[] args, int offset) {
+        if (args == null) {
+            return;
+        }
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            int index = offset + i;
+            if (arg == null) {
+                program.bindNull(index);
+            } else if (arg instanceof byte[]) {
+                program.bindBlob(index, (byte[]) arg);
+            } else if (arg instanceof Double || arg instanceof Float) {
+                program.bindDouble(index, ((Number) arg).doubleValue());
+            } else if (arg instanceof Number) {
+                program.bindLong(index, ((Number) arg).longValue());
+            } else {
+                program.bindString(index, arg.toString());
+            }
+        }
+    }
+
+    /**
+     * 按 buildInsertSQL 的顺序绑定参数
+     */
+    public void bindInsertArgs(SQLiteProgram program, Table table, Object object) {
+        RowAdapter<Object> adapter = table.getAdapter();
+        if (adapter != null) {
+            adapter.bindInsert(program, object);
+            return;
+        }
+        int index = 1;
+        for (Column column : table.getColumns().values()) {
+            if (isInsertColumn(column)) {
+                bindColumn(program, index++, column, object);
+            }
+        }
+    }
+
+    /**
+     * 按 buildUpdateSQL 的顺序绑定参数
+     */
+    public void bindUpdateArgs(SQLiteProgram program, Table table, Object object) {
+        RowAdapter<Object> adapter = table.getAdapter();
+        if (adapter != null) {
+            adapter.bindUpdate(program, object);
+            return;
+        }
+        int index = 1;
+        for (Column column : table.getColumns().values()) {
+            if (isUpdateColumn(column)) {
+                bindColumn(program, index++, column, object);
+            }
+        }
+        bindPrimaryKeyArgs(program, table, object, index);
+    }
+
+    /**
+     * 从 offset 开始（从 1 计数）绑定主键
+     */
+    public void bindPrimaryKeyArgs(SQLiteProgram program, Table table, Object object,
+                                   int offset) {
+        RowAdapter<Object> adapter = table.getAdapter();
+        if (adapter != null) {
+            adapter.bindPrimaryKey(program, object, offset);
+            return;
+        }
+        int index = offset;
+        for (Column column : table.getPrimaryKey()) {
+            bindColumn(program, index++, column, object);
+        }
+    }
+
+    /**
+     * 从 offset 开始（从 1 计数）绑定指定的列
+     */
+    public void bindColumnArgs(SQLiteProgram program, List<Column> columns, Object object,
+                               int offset) {
+        int index = offset;
+        for (Column column : columns) {
+            bindColumn(program, index++, column, object);
+        }
+    }
+
+    /**
+     * 选出需要更新的非主键列，列名不区分大小写
+     */
+    public List<Column> buildUpdateColumns(Object object, String[] columns) {
+        Table table = mTableManager.getTable(object);
+        if (table == null) {
+            return null;
+        }
+        List<Column> result = new ArrayList<>();
+        if (columns == null || columns.length <= 0) {
+            return result;
+        }
+        Column[] columnArray = table.getColumnArray();
+        boolean[] selected = new boolean[columnArray.length];
+        for (String name : columns) {
+            int index = table.getColumnIndex(name);
+            if (index != -1) {
+                selected[index] = true;
+            }
+        }
+        for (int i = 0; i < columnArray.length; i++) {
+            if (selected[i] && isUpdateColumn(columnArray[i])) {
+                result.add(columnArray[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 对象当前各列的值，与 {@link Table#getColumnArray()} 顺序一致，用于脏检查
+     * 值按绑定时的形式保存（Date 保存为毫秒，byte[] 保存副本），之后修改对象不会影响快照
+     */
+    public Object[] buildSnapshot(Object object) {
+        Table table = mTableManager.getTable(object);
+        if (table == null) {
+            return null;
+        }
+        Column[] columns = table.getColumnArray();
+        Object[] snapshot = new Object[columns.length];
+        try {
+            for (int i = 0; i < columns.length; i++) {
+                snapshot[i] = snapshotValue(columns[i], columns[i].getField().get(object));
+            }
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * 与快照相比发生变化的非主键列，按列顺序排列
+     *
+     * @param snapshot {@link #buildSnapshot(Object)} 的结果
+     * @return 快照无效时返回 null
+     */
+    public List<Column> buildDirtyColumns(Object object, Object[] snapshot) {
+        Table table = mTableManager.getTable(object);
+        if (table == null || snapshot == null) {
+            return null;
+        }
+        Column[] columns = table.getColumnArray();
+        if (columns.length != snapshot.length) {
+            return null;
+        }
+        List<Column> result = new ArrayList<>();
+        try {
+            for (int i = 0; i < columns.length; i++) {
+                Column column = columns[i];
+                if (!isUpdateColumn(column)) {
+                    continue;
+                }
+                Object value = snapshotValue(column, column.getField().get(object));
+                if (!valueEquals(value, snapshot[i])) {
+                    result.add(column);
+                }
+            }
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+        return result;
+    }
+
+    public ContentValues buildInsertValues(Object object) {
+        Table table = mTableManager.getTable(object);
+        if (table == null) {
+            return null;
+        }
+        ContentValues values = new ContentValues();
+        Map<String, Column> columnMap = table.getColumns();
+        try {
+            for (String key : columnMap.keySet()) {
+                Column column = columnMap.get(key);
+                if (column == null) {
+                    continue;
+                }
+                /**
+                 * 如果是自增长主键，则不赋值。
+                 */
+                if (column.getId() != null && column.getId().isAutoIncrement()) {
+                    continue;
+                }
+                String columnName = column.getName();
+                Field columnField = column.getField();
+
+                Object columnValue = columnField.get(object);
+                if (columnValue == null) {
+                    values.putNull(columnName);
+                    continue;
+                }
+
+                int columnClassType = column.getClassType();
+                convertToValue(values, columnName, columnValue, columnClassType);
+            }
+        } catch (IllegalAccessException ignored) {}
+        return values;
+    }
+
+    public ContentValues buildUpdateValues(Object object, String[] columns) {
+        Table table = mTableManager.getTable(object);
+        if (table == null) {
+            return null;
+        }
+        ContentValues values = new ContentValues();
+        Map<String, Column> columnMap = table.getColumns();
+        try {
+            for (String key : columnMap.keySet()) {
+                Column column = columnMap.get(key);
+                if (column == null) {
+                    continue;
+                }
+                if (column.getId() != null) {
+                    continue;
+                }
+                String columnName = column.getName();
+                if (columns != null && !contains(columnName, columns)) {
+                    continue;
+                }
+
+                Field columnField = column.getField();
+
+                Object columnValue = columnField.get(object);
+                if (columnValue == null) {
+                    values.putNull(columnName);
+                    continue;
+                }
+
+                int columnClassType = column.getClassType();
+                convertToValue(values, columnName, columnValue, columnClassType);
+            }
+        } catch (IllegalAccessException ignored) {}
+        return values;
+    }
+
+    public Object buildQueryValues(Class<?> clazz, Cursor cursor) {
+        Table table = mTableManager.getTable(clazz);
+        if (table == null) {
+            return null;
+        }
+        return new RowMapper<>(table).map(cursor);
+    }
+
+    /**
+     * 按列类型读取 Cursor 中的值，调用前需要确认值不为 NULL
+     */
+    public static Object readValue(Cursor cursor, int index, int columnClassType) {
+        Object value = null;
+        switch (columnClassType) {
+            case DataType.CLASS_TYPE_STRING:
+                value = cursor.getString(index);
+                break;
+            case DataType.CLASS_TYPE_BOOLEAN:
+                int intValue = cursor.getInt(index);
+                value = (intValue != 0);
+                break;
+            case DataType.CLASS_TYPE_CHAR:
+                String strValue = cursor.getString(index);
+                if (strValue.length() > 0) {
+                    value = strValue.charAt(0);
+                }
+                break;
+            case DataType.CLASS_TYPE_DOUBLE:
+                value = cursor.getDouble(index);
+                break;
+            case DataType.CLASS_TYPE_FLOAT:
+                value = cursor.getFloat(index);
+                break;
+            case DataType.CLASS_TYPE_LONG:
+                value = cursor.getLong(index);
+                break;
+            case DataType.CLASS_TYPE_INT:
+                value = cursor.getInt(index);
+                break;
+            case DataType.CLASS_TYPE_SHORT:
+                value = cursor.getShort(index);
+                break;
+            case DataType.CLASS_TYPE_BYTE:
+                value = (byte) cursor.getShort(index);
+                break;
+            case DataType.CLASS_TYPE_DATE:
+                long longValue = cursor.getLong(index);
+                value = new Date(longValue);
+                break;
+            case DataType.CLASS_TYPE_BYTE_ARRAY:
+                value = cursor.getBlob(index);
+                break;
+        }
+        return value;
+    }
+
+    /**
+     * @deprecated 主键值以字面量拼接，BLOB 主键无法匹配，使用 {@link #buildWhereSQL(Class)} 与
+     * {@link #buildWhereArgs(Object)}
+     */
+    @Deprecated
+    public String buildWhereSQL(Object object) {
+        Table table = mTableManager.getTable(object);
+        if (table == null) {
+            return null;
+        }
+
+        List<Column> primaryKeys = table.getPrimaryKey();
+        if (primaryKeys == null || primaryKeys.isEmpty()) {
+            return null;
+        }
+
+        RowAdapter<Object> adapter = table.getAdapter();
+        Object[] values = adapter != null ? adapter.getPrimaryKey(object) : null;
+        StringBuilder whereCase = new StringBuilder();
+        int index = 0;
+        for (Column primaryKey : primaryKeys) {
+            if (values != null) {
+                whereCase.append(buildWhereSQLiteForPrimaryKey(primaryKey, values[index++]));
+            } else {
+                whereCase.append(buildWhereSQLiteForPrimaryKey(object, primaryKey));
+            }
+            whereCase.append(AND);
+        }
+
+        if (whereCase.toString().endsWith(AND)) {
+            whereCase.delete(whereCase.lastIndexOf(AND), whereCase.length() - 1);
+        }
+        return whereCase.toString();
+    }
+
+    private String buildWhereSQLiteForPrimaryKey(Object object,
+                                                 Column primaryKey) {
+        Object value = null;
+        try {
+            if (primaryKey != null && primaryKey.getId() != null) {
+                value = primaryKey.getField().get(object);
+            }
+        } catch (IllegalAccessException ignored) {}
+        return buildWhereSQLiteForPrimaryKey(primaryKey, value);
+    }
+
+    private String buildWhereSQLiteForPrimaryKey(Column primaryKey, Object value) {
+        String id = "";
+        String whereCase = "";
+        int sqlType = DataType.SQL_TYPE_BLOB;
+        if (primaryKey != null && primaryKey.getId() != null) {
+            id = primaryKey.getName();
+            sqlType = DataType.getSQLDataType(primaryKey.getClassType());
+        }
+
+        if (TextUtils.isEmpty(id)) {
+            return whereCase;
+        }
+
+        switch (sqlType) {
+            case DataType.SQL_TYPE_BLOB:
+                break;
+            case DataType.SQL_TYPE_TEXT:
+                whereCase = id + EQUAL + SINGLE_QUOTE + value + SINGLE_QUOTE;
+                break;
+            case DataType.SQL_TYPE_REAL:
+            case DataType.SQL_TYPE_INTEGER:
+                whereCase = id + EQUAL + value;
+                break;
+        }
+        return whereCase;
+    }
+
+    /**
+     * 列按表中顺序排列且不超过 64 列时按位掩码缓存，相同的 SQL 也能命中连接上的语句缓存
+     *
+     * @return 列集合的位掩码，无法缓存时返回 0
+     */
+    private static long buildColumnMask(Table table, List<Column> columns) {
+        long mask = 0;
+        int last = -1;
+        for (Column column : columns) {
+            int index = table.getColumnIndex(column.getName());
+            if (index <= last || index >= Long.SIZE) {
+                return 0;
+            }
+            mask |= 1L << index;
+            last = index;
+        }
+        return mask;
+    }
+
+    private String buildUpsertSQL(Table table, List<Column> updateColumns) {
+        StringBuilder builder = new StringBuilder();
+        appendInsert(builder, table, INSERT_INTO);
+        builder.append(ON_CONFLICT);
+        builder.append(PARENTHESES_LEFT);
+        for (int i = 0; i < table.getPrimaryKey().size(); i++) {
+            if (i > 0) {
+                builder.append(COMMA);
+            }
+            builder.append(table.getPrimaryKey().get(i).getName());
+        }
+        builder.append(PARENTHESES_RIGHT);
+        if (updateColumns.isEmpty()) {
+            builder.append(DO_NOTHING);
+            return builder.toString();
+        }
+        builder.append(DO_UPDATE_SET);
+        for (int i = 0; i < updateColumns.size(); i++) {
+            if (i > 0) {
+                builder.append(COMMA);
+            }
+            String name = updateColumns.get(i).getName();
+            builder.append(name).append(EQUAL).append(EXCLUDED).append(name);
+        }
+        return builder.toString();
+    }
+
+    private void appendInsert(StringBuilder builder, Table table, String insert) {
+        StringBuilder names = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        for (Column column : table.getColumns().values()) {
+            if (!isInsertColumn(column)) {
+                continue;
+            }
+            if (names.length() > 0) {
+                names.append(COMMA);
+                values.append(COMMA);
+            }
+            names.append(column.getName());
+            values.append(PLACEHOLDER);
+        }
+
+        builder.append(insert);
+        builder.append(table.getName());
+        if (names.length() == 0) {
+            builder.append(DEFAULT_VALUES);
+        } else {
+            builder.append(PARENTHESES_LEFT).append(names).append(PARENTHESES_RIGHT);
+            builder.append(VALUES);
+            builder.append(PARENTHESES_LEFT).append(values).append(PARENTHESES_RIGHT);
+        }
+    }
+
+    /**
+     * 64 位 FNV-1a，按 UTF-16 的低字节、高字节依次累加
+     */
+    private static long fnv1a(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * 有主键且主键不自增时，插入的数据包含完整主键，才能按主键判断冲突
+     */
+    private boolean isUpsertable(Table table) {
+        if (table == null || table.getPrimaryKey().isEmpty()) {
+            return false;
+        }
+        for (Column primaryKey : table.getPrimaryKey()) {
+            if (!isInsertColumn(primaryKey)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 把查询条件中的值转换为绑定参数：boolean 转为 1/0，char 转为字符串，Date 转为毫秒
+     */
+    public static Object toBindArg(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1L : 0L;
+        }
+        if (value instanceof Character) {
+            return value.toString();
+        }
+        if (value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+        return value;
+    }
+
+    private static boolean valueEquals(Object a, Object b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null) {
+            return false;
+        }
+        if (a instanceof byte[] && b instanceof byte[]) {
+            return Arrays.equals((byte[]) a, (byte[]) b);
+        }
+        return a.equals(b);
+    }
+
+    private static Object snapshotValue(Column column, Object value) {
+        if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        }
+        return toArg(value, column.getClassType());
+    }
+
+    private static Object toArg(Object value, int classType) {
+        if (value == null) {
+            return null;
+        }
+        switch (classType) {
+            case DataType.CLASS_TYPE_BOOLEAN:
+                return (boolean) value ? 1L : 0L;
+            case DataType.CLASS_TYPE_CHAR:
+                return value.toString();
+            case DataType.CLASS_TYPE_DATE:
+                return ((Date) value).getTime();
+            default:
+                return value;
+        }
+    }
+
+    private boolean isInsertColumn(Column column) {
+        if (column.getId() != null && column.getId().isAutoIncrement()) {
+            return false;
+        }
+        return column.getClassType() != DataType.CLASS_TYPE_UNKNOWN;
+    }
+
+    private boolean isUpdateColumn(Column column) {
+        return column.getId() == null && column.getClassType() != DataType.CLASS_TYPE_UNKNOWN;
+    }
+
+    private void bindColumn(SQLiteProgram program, int index, Column column, Object object) {
+        try {
+            column.bind(program, index, object);
+        } catch (IllegalAccessException e) {
+            program.bindNull(index);
+        }
+    }
+
+    private static String zeroValue(Column column) {
+        switch (DataType.getSQLDataType(column.getClassType())) {
+            case DataType.SQL_TYPE_INTEGER:
+            case DataType.SQL_TYPE_REAL:
+                return "0";
+            case DataType.SQL_TYPE_TEXT:
+                return "''";
+            case DataType.SQL_TYPE_BLOB:
+            default:
+                return "X''";
+        }
+    }
+
+    private void appendPrimaryKeyWhere(StringBuilder builder, Table table) {
+        boolean first = true;
+        for (Column primaryKey : table.getPrimaryKey()) {
+            if (!first) {
+                builder.append(AND);
+            }
+            builder.append(primaryKey.getName()).append(EQUAL).append(PLACEHOLDER);
+            first = false;
+        }
+    }
+
+    private void appendIdsWhere(StringBuilder builder, Table table, int count) {
+        List<Column> primaryKeys = table.getPrimaryKey();
+        if (primaryKeys.size() == 1) {
+            builder.append(primaryKeys.get(0).getName()).append(IN).append(PARENTHESES_LEFT);
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(PLACEHOLDER);
+            }
+            builder.append(PARENTHESES_RIGHT);
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(OR);
+            }
+            builder.append(PARENTHESES_LEFT);
+            appendPrimaryKeyWhere(builder, table);
+            builder.append(PARENTHESES_RIGHT);
         }
-        return whereCase;
     }
 
     private boolean contains(String column, String[] columns) {
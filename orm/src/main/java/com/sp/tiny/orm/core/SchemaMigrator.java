@@ -0,0 +1,373 @@
+package com.sp.tiny.orm.core;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * author: 后知后觉(307817387/myz7656)
+ * email: whuzhanyuanmin@126.com
+ */
+
+/**
+ * 按 Bean 定义与 PRAGMA table_info / index_list 的差异迁移表结构:
+ * A，表不存在时建表与索引
+ * B，只新增可以为 NULL 的普通列时使用 ALTER TABLE ADD COLUMN，索引按名称新建、删除或者重建
+ * C，列类型、NOT NULL、主键、UNIQUE 变化，或者新增主键、UNIQUE、NOT NULL 列时，新建表并复制一次数据后替换
+ * Bean 没有映射的列不会删除，也不会触发重建；重建时按原有的类型、NOT NULL、默认值复制到新表，
+ * 涉及这些列的索引也会重新创建，因此只映射部分列的 Bean 不会破坏其他 Bean 的数据。
+ * 本身不开启事务，由调用方保证所有语句在同一个事务中执行，失败时抛出 SQLException。
+ */
+public class SchemaMigrator {
+    public static final int RESULT_UNCHANGED = 0;
+    public static final int RESULT_CREATED = 1;
+    public static final int RESULT_ALTERED = 2;
+    public static final int RESULT_REBUILT = 3;
+
+    private static final String AUTO_INDEX_PREFIX = "sqlite_autoindex_";
+    private static final String REBUILD_PREFIX = "tiny_orm_new_";
+
+    private final TableManager mTableManager;
+    private final SQLBuilder mSQLBuilder;
+
+    public SchemaMigrator(@NonNull TableManager manager, @NonNull SQLBuilder builder) {
+        mTableManager = manager;
+        mSQLBuilder = builder;
+    }
+
+    /**
+     * 把 clazz 对应的表迁移到 Bean 定义
+     *
+     * @param db DBDatabase 引擎
+     * @param clazz Bean 对应的 class
+     * @return RESULT_UNCHANGED、RESULT_CREATED、RESULT_ALTERED、RESULT_REBUILT，不是 Entity 时返回 -1
+     */
+    public int migrate(SQLiteDatabase db, Class<?> clazz) {
+        Table table = mTableManager.getTable(clazz);
+        if (table == null) {
+            return -1;
+        }
+        Map<String, ColumnInfo> existing = queryColumns(db, clazz);
+        if (existing.isEmpty()) {
+            create(db, clazz);
+            return RESULT_CREATED;
+        }
+
+        List<Column> added = new ArrayList<>();
+        if (needsRebuild(db, clazz, table, existing, added)) {
+            rebuild(db, clazz, table, existing);
+            return RESULT_REBUILT;
+        }
+        for (Column column : added) {
+            db.execSQL(mSQLBuilder.buildAddColumnSQL(clazz, column));
+        }
+        boolean indexChanged = migrateIndexes(db, clazz, table, mappedColumns(table));
+        return added.isEmpty() && !indexChanged ? RESULT_UNCHANGED : RESULT_ALTERED;
+    }
+
+    /**
+     * 建表与所有索引，表已存在时不做修改
+     */
+    public void create(SQLiteDatabase db, Class<?> clazz) {
+        String sql = mSQLBuilder.buildCreateTableSQL(clazz);
+        if (!TextUtils.isEmpty(sql)) {
+            db.execSQL(sql);
+        }
+        String[] indexSQLs = mSQLBuilder.buildCreateIndexSQL(clazz);
+        if (indexSQLs != null) {
+            for (String indexSQL : indexSQLs) {
+                if (!TextUtils.isEmpty(indexSQL)) {
+                    db.execSQL(indexSQL);
+                }
+            }
+        }
+    }
+
+    private boolean needsRebuild(SQLiteDatabase db, Class<?> clazz, Table table,
+                                 Map<String, ColumnInfo> existing, List<Column> added) {
+        List<Column> primaryKeys = table.getPrimaryKey();
+        Set<String> names = new HashSet<>();
+        for (Column column : table.getColumnArray()) {
+            String name = column.getName().toLowerCase(Locale.ENGLISH);
+            names.add(name);
+            int primaryKey = primaryKeys.indexOf(column) + 1;
+            ColumnInfo info = existing.get(name);
+            if (info == null) {
+                if (primaryKey > 0 || column.isUnique() || !column.isCanBeNull()) {
+                    return true;
+                }
+                added.add(column);
+                continue;
+            }
+            String type = DataType.getSQLDataTypeString(column.getClassType()).trim();
+            if (!type.equalsIgnoreCase(info.mType)
+                    || info.mNotNull == column.isCanBeNull()
+                    || info.mPrimaryKey != primaryKey) {
+                return true;
+            }
+        }
+        for (Map.Entry<String, ColumnInfo> entry : existing.entrySet()) {
+            if (!names.contains(entry.getKey()) && entry.getValue().mPrimaryKey > 0) {
+                /**
+                 * 主键变化，旧主键列作为普通列保留
+                 */
+                return true;
+            }
+        }
+
+        Set<String> unique = queryUniqueColumns(db, clazz);
+        for (Column column : table.getColumnArray()) {
+            if (column.getId() != null || added.contains(column)) {
+                continue;
+            }
+            String name = column.getName().toLowerCase(Locale.ENGLISH);
+            if (column.isUnique() != unique.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void rebuild(SQLiteDatabase db, Class<?> clazz, Table table,
+                         Map<String, ColumnInfo> existing) {
+        Set<String> mapped = mappedColumns(table);
+        List<String> extraNames = new ArrayList<>();
+        List<String> extraColumns = new ArrayList<>();
+        for (Map.Entry<String, ColumnInfo> entry : existing.entrySet()) {
+            if (mapped.contains(entry.getKey())) {
+                continue;
+            }
+            ColumnInfo info = entry.getValue();
+            StringBuilder definition = new StringBuilder(info.mName);
+            if (!TextUtils.isEmpty(info.mType)) {
+                definition.append(' ').append(info.mType);
+            }
+            if (info.mNotNull && info.mPrimaryKey == 0) {
+                definition.append(' ').append(SQLBuilder.NOT_NULL.trim());
+            }
+            if (info.mDefault != null) {
+                definition.append(" DEFAULT ").append(info.mDefault);
+            }
+            extraNames.add(info.mName);
+            extraColumns.add(definition.toString());
+        }
+        List<String> extraIndexes = queryExtraIndexSQLs(db, clazz, table, mapped);
+
+        String name = table.getName();
+        String temp = REBUILD_PREFIX + name;
+        db.execSQL(mSQLBuilder.buildDropTableSQL(temp));
+        db.execSQL(mSQLBuilder.buildCreateTableSQL(clazz, temp, extraColumns));
+        String copySQL = mSQLBuilder.buildCopyTableSQL(clazz, temp, existing.keySet(), extraNames);
+        if (copySQL != null) {
+            db.execSQL(copySQL);
+        }
+        db.execSQL(mSQLBuilder.buildDropTableSQL(name));
+        db.execSQL(mSQLBuilder.buildRenameTableSQL(temp, name));
+        create(db, clazz);
+        for (String indexSQL : extraIndexes) {
+            db.execSQL(indexSQL);
+        }
+        if (table.getEntityCache() != null) {
+            table.getEntityCache().clear();
+        }
+    }
+
+    /**
+     * Bean 映射的列名，小写
+     */
+    private static Set<String> mappedColumns(Table table) {
+        Set<String> names = new HashSet<>();
+        for (Column column : table.getColumnArray()) {
+            names.add(column.getName().toLowerCase(Locale.ENGLISH));
+        }
+        return names;
+    }
+
+    /**
+     * 索引签名中是否有 Bean 没有映射的列，这样的索引属于其他 Bean，迁移时保留
+     */
+    private static boolean hasExtraColumn(String signature, Set<String> mapped) {
+        String values = signature.substring(signature.indexOf(':') + 1);
+        for (String value : values.split(",")) {
+            if (!value.isEmpty() && !mapped.contains(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 重建前读取需要保留的索引的建立语句，不包括与 Bean 中索引同名的索引
+     */
+    private List<String> queryExtraIndexSQLs(SQLiteDatabase db, Class<?> clazz, Table table,
+                                             Set<String> mapped) {
+        Set<String> declared = new HashSet<>();
+        for (Table.Index index : table.getIndexes()) {
+            declared.add(index.getName().toLowerCase(Locale.ENGLISH));
+        }
+        List<String> sqls = new ArrayList<>();
+        for (Map.Entry<String, String> entry : queryIndexes(db, clazz, false).entrySet()) {
+            if (declared.contains(entry.getKey()) || !hasExtraColumn(entry.getValue(), mapped)) {
+                continue;
+            }
+            Cursor cursor = db.rawQuery(mSQLBuilder.buildIndexDefinitionSQL(),
+                                        new String[] {entry.getKey()});
+            if (cursor == null) {
+                continue;
+            }
+            try {
+                if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                    sqls.add(cursor.getString(0));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return sqls;
+    }
+
+    /**
+     * 按名称对比索引的唯一性与列，删除多余或者变化的索引，再新建缺少的索引
+     * 涉及 Bean 没有映射的列、并且不与 Bean 中索引同名的索引保留
+     *
+     * @return 是否修改了索引
+     */
+    private boolean migrateIndexes(SQLiteDatabase db, Class<?> clazz, Table table,
+                                   Set<String> mapped) {
+        Map<String, String> expected = new HashMap<>();
+        for (Table.Index index : table.getIndexes()) {
+            StringBuilder signature = new StringBuilder(index.isUnique() ? "u:" : ":");
+            for (String value : index.getValues().split(",")) {
+                signature.append(value.trim().split("\\s+")[0].toLowerCase(Locale.ENGLISH));
+                signature.append(',');
+            }
+            expected.put(index.getName().toLowerCase(Locale.ENGLISH), signature.toString());
+        }
+
+        boolean changed = false;
+        Map<String, String> current = queryIndexes(db, clazz, false);
+        for (Map.Entry<String, String> entry : current.entrySet()) {
+            String signature = expected.get(entry.getKey());
+            if (signature == null && hasExtraColumn(entry.getValue(), mapped)) {
+                continue;
+            }
+            if (!entry.getValue().equals(signature)) {
+                db.execSQL(mSQLBuilder.buildDropIndexSQL(entry.getKey()));
+                changed = true;
+            }
+        }
+        for (Table.Index index : table.getIndexes()) {
+            String name = index.getName().toLowerCase(Locale.ENGLISH);
+            if (!expected.get(name).equals(current.get(name))) {
+                db.execSQL(mSQLBuilder.buildCreateIndexSQL(clazz, index.getName()));
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private Map<String, ColumnInfo> queryColumns(SQLiteDatabase db, Class<?> clazz) {
+        Map<String, ColumnInfo> columns = new LinkedHashMap<>();
+        Cursor cursor = db.rawQuery(mSQLBuilder.buildTableInfoSQL(clazz), null);
+        if (cursor == null) {
+            return columns;
+        }
+        try {
+            int nameIndex = cursor.getColumnIndex("name");
+            int typeIndex = cursor.getColumnIndex("type");
+            int notNullIndex = cursor.getColumnIndex("notnull");
+            int defaultIndex = cursor.getColumnIndex("dflt_value");
+            int primaryKeyIndex = cursor.getColumnIndex("pk");
+            while (cursor.moveToNext()) {
+                ColumnInfo info = new ColumnInfo();
+                info.mName = cursor.getString(nameIndex);
+                info.mType = cursor.getString(typeIndex);
+                info.mNotNull = cursor.getInt(notNullIndex) != 0;
+                info.mDefault = cursor.isNull(defaultIndex) ? null : cursor.getString(defaultIndex);
+                info.mPrimaryKey = cursor.getInt(primaryKeyIndex);
+                columns.put(info.mName.toLowerCase(Locale.ENGLISH), info);
+            }
+        } finally {
+            cursor.close();
+        }
+        return columns;
+    }
+
+    /**
+     * 单列 UNIQUE 约束对应的列名，来自 SQLite 自动创建的 sqlite_autoindex_ 索引
+     */
+    private Set<String> queryUniqueColumns(SQLiteDatabase db, Class<?> clazz) {
+        Set<String> columns = new HashSet<>();
+        for (Map.Entry<String, String> entry : queryIndexes(db, clazz, true).entrySet()) {
+            String signature = entry.getValue();
+            String values = signature.substring(signature.indexOf(':') + 1);
+            if (values.indexOf(',') == values.length() - 1) {
+                columns.add(values.substring(0, values.length() - 1));
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * 表上的索引，值为 "u:c1,c2," 形式的签名，非唯一索引没有前缀 u
+     *
+     * @param auto 为 true 时只返回约束自动创建的索引，否则只返回显式创建的索引
+     */
+    private Map<String, String> queryIndexes(SQLiteDatabase db, Class<?> clazz, boolean auto) {
+        Map<String, Boolean> indexes = new HashMap<>();
+        Cursor cursor = db.rawQuery(mSQLBuilder.buildIndexListSQL(clazz), null);
+        if (cursor != null) {
+            try {
+                int nameIndex = cursor.getColumnIndex("name");
+                int uniqueIndex = cursor.getColumnIndex("unique");
+                while (cursor.moveToNext()) {
+                    String name = cursor.getString(nameIndex).toLowerCase(Locale.ENGLISH);
+                    if (name.startsWith(AUTO_INDEX_PREFIX) == auto) {
+                        indexes.put(name, cursor.getInt(uniqueIndex) != 0);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        Map<String, String> signatures = new HashMap<>();
+        for (Map.Entry<String, Boolean> entry : indexes.entrySet()) {
+            StringBuilder signature = new StringBuilder(entry.getValue() ? "u:" : ":");
+            cursor = db.rawQuery(mSQLBuilder.buildIndexInfoSQL(entry.getKey()), null);
+            if (cursor == null) {
+                continue;
+            }
+            try {
+                int nameIndex = cursor.getColumnIndex("name");
+                while (cursor.moveToNext()) {
+                    String name = cursor.getString(nameIndex);
+                    signature.append(name == null ? "" : name.toLowerCase(Locale.ENGLISH));
+                    signature.append(',');
+                }
+            } finally {
+                cursor.close();
+            }
+            signatures.put(entry.getKey(), signature.toString());
+        }
+        return signatures;
+    }
+
+    private static class ColumnInfo {
+        private String mName;
+        private String mType;
+        private boolean mNotNull;
+        private String mDefault;
+        private int mPrimaryKey;
+    }
+}
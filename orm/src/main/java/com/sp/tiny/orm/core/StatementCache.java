@@ -0,0 +1,99 @@
+package com.sp.tiny.orm.core;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * author: 后知后觉(307817387/myz7656)
+ * email: whuzhanyuanmin@126.com
+ */
+
+/**
+ * 每个 Table 按数据库缓存编译好的 SQLiteStatement。
+ * SQLiteStatement 不是线程安全的，使用时需要对其加锁，绑定、执行、清理绑定在同一个锁内完成。
+ * 数据库关闭后对应的语句会在下一次访问或出现新的数据库时释放，
+ * 也可以通过 {@link #release(SQLiteDatabase)} 主动释放。
+ */
+public class StatementCache {
+    public static final int INSERT = 0;
+    public static final int UPDATE = 1;
+    public static final int DELETE = 2;
+    public static final int UPSERT = 3;
+    public static final int INSERT_OR_IGNORE = 4;
+    public static final int EXISTS = 5;
+    public static final int COUNT = 6;
+
+    static final int SIZE = 7;
+
+    private final HashMap<SQLiteDatabase, SQLiteStatement[]> mStatements;
+
+    public StatementCache() {
+        mStatements = new HashMap<>();
+    }
+
+    public synchronized SQLiteStatement get(SQLiteDatabase db, int type) {
+        SQLiteStatement[] statements = mStatements.get(db);
+        if (statements == null) {
+            return null;
+        }
+        if (!db.isOpen()) {
+            release(db);
+            return null;
+        }
+        return statements[type];
+    }
+
+    /**
+     * 放入缓存，如果其他线程已经放入，则关闭传入的语句并返回已缓存的语句
+     */
+    public synchronized SQLiteStatement put(SQLiteDatabase db, int type,
+                                            SQLiteStatement statement) {
+        SQLiteStatement[] statements = mStatements.get(db);
+        if (statements == null) {
+            purge();
+            statements = new SQLiteStatement[SIZE];
+            mStatements.put(db, statements);
+        }
+        if (statements[type] != null) {
+            statement.close();
+            return statements[type];
+        }
+        statements[type] = statement;
+        return statement;
+    }
+
+    public synchronized void release(SQLiteDatabase db) {
+        SQLiteStatement[] statements = mStatements.remove(db);
+        close(statements);
+    }
+
+    /**
+     * 释放所有已关闭数据库的语句
+     */
+    public synchronized void purge() {
+        Iterator<Map.Entry<SQLiteDatabase, SQLiteStatement[]>> iterator =
+                mStatements.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<SQLiteDatabase, SQLiteStatement[]> entry = iterator.next();
+            if (!entry.getKey().isOpen()) {
+                close(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    private static void close(SQLiteStatement[] statements) {
+        if (statements == null) {
+            return;
+        }
+        for (SQLiteStatement statement : statements) {
+            if (statement != null) {
+                statement.close();
+            }
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package com.sp.tiny.orm.core;
 
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * author: 后知后觉(307817387/myz7656)
@@ -11,11 +15,25 @@ import java.util.Map;
  */
 
 public class Table {
+    private static final int MAX_SHAPES = 128;
+
     private String mName;
     private Class<?> mClazz;
     private final LinkedList<Column> mPrimaryKey;
     private final LinkedHashMap<String, Column> mColumns;
     private final LinkedList<Index> mIndexes;
+    private RowAdapter<Object> mAdapter;
+    private EntityCreator mCreator;
+    private final StatementCache mStatementCache;
+    private volatile EntityCache mEntityCache;
+    private volatile Column[] mColumnArray;
+    private volatile HashMap<String, Integer> mColumnIndexes;
+    private final ConcurrentHashMap<Long, String> mUpdateSQL;
+    private final ConcurrentHashMap<Long, String> mUpsertSQL;
+    private final ConcurrentHashMap<String, String> mShapeSQL;
+    private volatile String mPrimaryKeyWhere;
+    private volatile String mQuerySQL;
+    private final AtomicReferenceArray<String> mStatementSQL;
 
     public Table(String name, Class<?> clazz) {
         mName = name;
@@ -23,6 +41,11 @@ public class Table {
         mPrimaryKey = new LinkedList<>();
         mColumns = new LinkedHashMap<>();
         mIndexes = new LinkedList<>();
+        mStatementCache = new StatementCache();
+        mStatementSQL = new AtomicReferenceArray<>(StatementCache.SIZE);
+        mUpdateSQL = new ConcurrentHashMap<>();
+        mUpsertSQL = new ConcurrentHashMap<>();
+        mShapeSQL = new ConcurrentHashMap<>();
     }
 
     public String getName() {
@@ -47,6 +70,42 @@ public class Table {
 
     public void addColumn(String name, Column column) {
         mColumns.put(name, column);
+        mColumnArray = null;
+        mColumnIndexes = null;
+    }
+
+    /**
+     * 按列顺序排列的 Column 数组，避免遍历 Map
+     */
+    public Column[] getColumnArray() {
+        Column[] columns = mColumnArray;
+        if (columns == null) {
+            columns = mColumns.values().toArray(new Column[0]);
+            mColumnArray = columns;
+        }
+        return columns;
+    }
+
+    /**
+     * 列在 {@link #getColumnArray()} 中的位置，列名不区分大小写
+     *
+     * @return 不存在时返回 -1
+     */
+    public int getColumnIndex(String name) {
+        if (name == null) {
+            return -1;
+        }
+        HashMap<String, Integer> indexes = mColumnIndexes;
+        if (indexes == null) {
+            Column[] columns = getColumnArray();
+            indexes = new HashMap<>(columns.length * 2);
+            for (int i = 0; i < columns.length; i++) {
+                indexes.put(columns[i].getName().toLowerCase(Locale.ENGLISH), i);
+            }
+            mColumnIndexes = indexes;
+        }
+        Integer index = indexes.get(name.toLowerCase(Locale.ENGLISH));
+        return index != null ? index : -1;
     }
 
     public List<Index> getIndexes() {
@@ -65,6 +124,108 @@ public class Table {
         mPrimaryKey.add(column);
     }
 
+    public RowAdapter<Object> getAdapter() {
+        return mAdapter;
+    }
+
+    public void setAdapter(RowAdapter<Object> adapter) {
+        mAdapter = adapter;
+    }
+
+    /**
+     * 没有生成 RowAdapter 时用于创建对象，实体缓存也用它复制对象，由 TableManager 在初始化时解析
+     */
+    public EntityCreator getCreator() {
+        return mCreator;
+    }
+
+    public void setCreator(EntityCreator creator) {
+        mCreator = creator;
+    }
+
+    /**
+     * 主键条件模板，如 "pk1=? AND pk2=?"，由 SQLBuilder 生成
+     */
+    public String getPrimaryKeyWhere() {
+        return mPrimaryKeyWhere;
+    }
+
+    public void setPrimaryKeyWhere(String primaryKeyWhere) {
+        mPrimaryKeyWhere = primaryKeyWhere;
+    }
+
+    public String getQuerySQL() {
+        return mQuerySQL;
+    }
+
+    public void setQuerySQL(String querySQL) {
+        mQuerySQL = querySQL;
+    }
+
+    /**
+     * StatementCache 各类型语句对应的 SQL，由 SQLBuilder 生成，空字符串表示该类型不可用
+     */
+    public String getStatementSQL(int type) {
+        return mStatementSQL.get(type);
+    }
+
+    public void setStatementSQL(int type, String sql) {
+        mStatementSQL.set(type, sql);
+    }
+
+    /**
+     * 只更新部分列的 UPDATE 语句，按列集合的位掩码缓存，由 SQLBuilder 生成
+     */
+    public String getUpdateSQL(long mask) {
+        return mUpdateSQL.get(mask);
+    }
+
+    public void setUpdateSQL(long mask, String sql) {
+        mUpdateSQL.put(mask, sql);
+    }
+
+    /**
+     * 冲突时只更新部分列的 UPSERT 语句，与 {@link #getUpdateSQL(long)} 使用相同的位掩码
+     */
+    public String getUpsertSQL(long mask) {
+        return mUpsertSQL.get(mask);
+    }
+
+    public void setUpsertSQL(long mask, String sql) {
+        mUpsertSQL.put(mask, sql);
+    }
+
+    /**
+     * Query 按查询结构（条件、排序、分页的组合）缓存的 SQL 模板
+     */
+    public String getShapeSQL(String shape) {
+        return mShapeSQL.get(shape);
+    }
+
+    /**
+     * 最多缓存 MAX_SHAPES 种结构，超出后不再缓存
+     */
+    public void setShapeSQL(String shape, String sql) {
+        if (mShapeSQL.size() < MAX_SHAPES) {
+            mShapeSQL.put(shape, sql);
+        }
+    }
+
+    public StatementCache getStatementCache() {
+        return mStatementCache;
+    }
+
+    /**
+     * 实体缓存，未开启时为 null
+     */
+    public EntityCache getEntityCache() {
+        return mEntityCache;
+    }
+
+    public void setEntityCache(EntityCache entityCache) {
+        mEntityCache = entityCache;
+    }
+
     public static class Index {
         String mName;
         String mValues;
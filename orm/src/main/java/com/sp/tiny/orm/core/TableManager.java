@@ -1,6 +1,7 @@
 package com.sp.tiny.orm.core;
 
 import android.text.TextUtils;
+import android.util.Log;
 
 import com.sp.tiny.orm.annotation.Entity;
 import com.sp.tiny.orm.annotation.Id;
@@ -10,7 +11,11 @@ import com.sp.tiny.orm.annotation.Property;
 import com.sp.tiny.orm.annotation.Unique;
 
 import java.lang.reflect.Field;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * author: 后知后觉(307817387/myz7656)
@@ -18,10 +23,27 @@ import java.util.HashMap;
  */
 
 public class TableManager {
-    private final HashMap<String, Table> mSQLiteTable;
+    public static final String ADAPTER_SUFFIX = "_RowAdapter";
+    private static final String TAG = "TableManager";
+
+    /**
+     * 每个类中的字段按名称排序，getDeclaredFields 不保证顺序，Android 上即为 dex 中的名称顺序。
+     * 列顺序决定建表语句与表结构指纹，orm-compiler 生成的 RowAdapter 按同样的顺序排列。
+     */
+    private static final Comparator<Field> FIELD_ORDER = new Comparator<Field>() {
+        @Override
+        public int compare(Field left, Field right) {
+            return left.getName().compareTo(right.getName());
+        }
+    };
+
+    /**
+     * 按 Class 缓存，读取不加锁，同一个 Class 只初始化一次，非 Entity 的 Class 缓存为 null。
+     */
+    private final ConcurrentHashMap<Class<?>, TableHolder> mSQLiteTable;
 
     public TableManager() {
-        mSQLiteTable = new HashMap<>();
+        mSQLiteTable = new ConcurrentHashMap<>();
     }
 
     public Table getTable(Object object) {
@@ -33,15 +55,30 @@ public class TableManager {
     }
 
     public Table getTable(Class<?> clazz) {
-        String name = getClassName(clazz);
-        if (TextUtils.isEmpty(name)) {
+        if (clazz == null) {
             return null;
         }
 
-        if (isNotExist(name)) {
-            return initTable(clazz);
+        TableHolder holder = mSQLiteTable.get(clazz);
+        if (holder == null) {
+            TableHolder created = new TableHolder(clazz);
+            holder = mSQLiteTable.putIfAbsent(clazz, created);
+            if (holder == null) {
+                holder = created;
+            }
+        }
+        return holder.get();
+    }
+
+    public List<Table> getTables() {
+        List<Table> tables = new ArrayList<>();
+        for (TableHolder holder : mSQLiteTable.values()) {
+            Table table = holder.peek();
+            if (table != null) {
+                tables.add(table);
+            }
         }
-        return getTable(name);
+        return tables;
     }
 
     private Table initTable(Class<?> clazz) {
@@ -61,6 +98,9 @@ public class TableManager {
             name = clazz.getSimpleName();
         }
         Table table = new Table(name, clazz);
+        if (entity.cacheSize() > 0) {
+            table.setEntityCache(new EntityCache(entity.cacheSize()));
+        }
 
         /**
          * second step: generate indexes.
@@ -76,13 +116,13 @@ public class TableManager {
             Table.Index index = new Table.Index(indexName, indexValue, isUnique);
             table.addIndex(index);
         }
-        String className = getClassName(clazz);
 
         /**
          * third step: generate columns.
          */
         while (clazz != null && clazz != Object.class) {
             Field[] fs = clazz.getDeclaredFields();
+            Arrays.sort(fs, FIELD_ORDER);
             for (Field f : fs) {
                 /**
                  * only parse Property Annotation.
@@ -135,29 +175,78 @@ public class TableManager {
             }
             clazz = clazz.getSuperclass();
         }
-        addTable(className, table);
-        return table;
-    }
 
-    private synchronized boolean isNotExist(String name) {
-        return !mSQLiteTable.containsKey(name);
+        /**
+         * fourth step: attach generated adapter.
+         */
+        attachAdapter(table);
+
+        /**
+         * fifth step: resolve how reflection creates and the entity cache copies objects.
+         */
+        table.setCreator(EntityCreator.create(table));
+        return table;
     }
 
-    private synchronized void addTable(String name, Table table) {
-        if (isNotExist(name)) {
-            mSQLiteTable.put(name, table);
+    @SuppressWarnings("unchecked")
+    private void attachAdapter(Table table) {
+        Class<?> clazz = table.getClazz();
+        RowAdapter<Object> adapter;
+        try {
+            Class<?> adapterClass = Class.forName(clazz.getName() + ADAPTER_SUFFIX, true,
+                                                  clazz.getClassLoader());
+            adapter = (RowAdapter<Object>) adapterClass.newInstance();
+        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException
+                | ClassCastException e) {
+            return;
+        }
+        /**
+         * RowAdapter 按位置读写，只有生成时的列顺序与 Table 一致才使用
+         */
+        String[] names = adapter.getColumnNames();
+        Column[] columns = table.getColumnArray();
+        if (names == null || names.length != columns.length) {
+            return;
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (!names[i].equals(columns[i].getName())) {
+                return;
+            }
         }
+        table.setAdapter(adapter);
     }
 
-    private synchronized Table getTable(String name) {
-        return mSQLiteTable.get(name);
-    }
+    private class TableHolder {
+        private final Class<?> mClazz;
+        private volatile boolean mInitialized;
+        private Table mTable;
 
-    private String getClassName(Class<?> clazz) {
-        if (clazz == null) {
-            return null;
+        TableHolder(Class<?> clazz) {
+            mClazz = clazz;
         }
 
-        return clazz.getName();
+        Table get() {
+            if (!mInitialized) {
+                synchronized (this) {
+                    if (!mInitialized) {
+                        try {
+                            mTable = initTable(mClazz);
+                        } catch (IllegalArgumentException e) {
+                            /**
+                             * Bean 定义错误只在第一次初始化时记录，之后按非 Entity 处理，各方法返回失败值
+                             */
+                            Log.e(TAG, "invalid entity " + mClazz.getName(), e);
+                            mTable = null;
+                        }
+                        mInitialized = true;
+                    }
+                }
+            }
+            return mTable;
+        }
+
+        Table peek() {
+            return mInitialized ? mTable : null;
+        }
     }
 }
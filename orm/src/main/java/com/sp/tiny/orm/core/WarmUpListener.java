@@ -0,0 +1,27 @@
+package com.sp.tiny.orm.core;
+
+/**
+ * author: 后知后觉(307817387/myz7656)
+ * email: whuzhanyuanmin@126.com
+ */
+
+/**
+ * 预热进度回调，在执行预热任务的线程中调用
+ */
+public interface WarmUpListener {
+    /**
+     * 某个 Bean 预热完成
+     *
+     * @param clazz Bean 对应的 class
+     * @param costNanos 耗时，单位纳秒
+     * @param success Bean 不是 Entity 或者初始化失败时为 false
+     */
+    void onEntityReady(Class<?> clazz, long costNanos, boolean success);
+
+    /**
+     * 所有 Bean 预热完成
+     *
+     * @param totalNanos 从开始预热到最后一个 Bean 完成的耗时，单位纳秒
+     */
+    void onFinished(long totalNanos);
+}